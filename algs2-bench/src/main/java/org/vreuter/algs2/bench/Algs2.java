@@ -0,0 +1,209 @@
+package org.vreuter.algs2.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+
+import edu.princeton.cs.algs4.Digraph;
+
+/**
+ * Bridge to the algs2 classes, which live in the default package
+ * (as the assignment requires) and so can't be named from here. JMH
+ * won't generate code for benchmarks in the default package, so the
+ * benchmarks call through these constant method handles, which the
+ * JIT inlines like direct calls.
+ *
+ * @author Vince Reuter
+ */
+final class Algs2 {
+
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final Class<?> WORDNET = type("WordNet");
+    private static final Class<?> SAP = type("SAP");
+    private static final Class<?> OUTCAST = type("Outcast");
+
+    private static final MethodHandle NEW_WORDNET =
+            constructor(WORDNET, String.class, String.class);
+    private static final MethodHandle LOAD_WORDNET =
+            function(WORDNET, "load", WORDNET, String.class);
+    private static final MethodHandle SAVE_WORDNET =
+            method(WORDNET, "save", void.class, String.class);
+    private static final MethodHandle NOUNS =
+            method(WORDNET, "nouns", Iterable.class);
+    private static final MethodHandle DISTANCE =
+            method(WORDNET, "distance", int.class, String.class, String.class);
+    private static final MethodHandle NEAREST =
+            method(WORDNET, "nearest", Map.class, String.class, int.class);
+    private static final MethodHandle IS_HYPERNYM_OF =
+            method(WORDNET, "isHypernymOf", boolean.class, String.class, String.class);
+    private static final MethodHandle HYPERNYMS =
+            method(WORDNET, "hypernyms", int[].class, String.class);
+    private static final MethodHandle WORDNET_IN_LOCALITY_ORDER =
+            method(WORDNET, "withLocalityOrder", WORDNET);
+
+    private static final MethodHandle NEW_SAP =
+            constructor(SAP, Digraph.class);
+    private static final MethodHandle LENGTH =
+            method(SAP, "length", int.class, int.class, int.class);
+    private static final MethodHandle SET_LENGTH =
+            method(SAP, "length", int.class, Iterable.class, Iterable.class);
+    private static final MethodHandle BOUNDED_LENGTH =
+            method(SAP, "boundedLength", int.class, int.class, int.class, int.class);
+    private static final MethodHandle LENGTHS =
+            method(SAP, "lengths", int[].class, int[].class, int[].class);
+    private static final MethodHandle SAP_WITH_LABELS =
+            method(SAP, "withLabels", SAP);
+
+    private static final MethodHandle NEW_OUTCAST =
+            constructor(OUTCAST, WORDNET);
+    private static final MethodHandle OUTCAST_OF =
+            method(OUTCAST, "outcast", String.class, String[].class);
+
+    private Algs2() {}
+
+
+    static Object newWordNet(String synsets, String hypernyms) {
+        try {return NEW_WORDNET.invokeExact(synsets, hypernyms);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static Object loadWordNet(String snapshot) {
+        try {return LOAD_WORDNET.invokeExact(snapshot);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static void saveWordNet(Object wordnet, String snapshot) {
+        try {SAVE_WORDNET.invokeExact(wordnet, snapshot);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    @SuppressWarnings("unchecked")
+    static Iterable<String> nouns(Object wordnet) {
+        try {return (Iterable<String>) (Iterable<?>) NOUNS.invokeExact(wordnet);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static int distance(Object wordnet, String nounA, String nounB) {
+        try {return (int) DISTANCE.invokeExact(wordnet, nounA, nounB);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static boolean isHypernymOf(Object wordnet, String nounA, String nounB) {
+        try {return (boolean) IS_HYPERNYM_OF.invokeExact(wordnet, nounA, nounB);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static int[] hypernyms(Object wordnet, String noun) {
+        try {return (int[]) HYPERNYMS.invokeExact(wordnet, noun);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Integer> nearest(Object wordnet, String noun, int k) {
+        try {return (Map<String, Integer>) (Map<?, ?>) NEAREST.invokeExact(wordnet, noun, k);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static Object withLocalityOrder(Object wordnet) {
+        try {return WORDNET_IN_LOCALITY_ORDER.invokeExact(wordnet);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static Object newSAP(Digraph G) {
+        try {return NEW_SAP.invokeExact(G);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static Object withLabels(Object sap) {
+        try {return SAP_WITH_LABELS.invokeExact(sap);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static int length(Object sap, int v, int w) {
+        try {return (int) LENGTH.invokeExact(sap, v, w);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static int length(Object sap, Iterable<Integer> v, Iterable<Integer> w) {
+        try {return (int) SET_LENGTH.invokeExact(sap, v, w);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static int boundedLength(Object sap, int v, int w, int maxLength) {
+        try {return (int) BOUNDED_LENGTH.invokeExact(sap, v, w, maxLength);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static int[] lengths(Object sap, int[] v, int[] w) {
+        try {return (int[]) LENGTHS.invokeExact(sap, v, w);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static Object newOutcast(Object wordnet) {
+        try {return NEW_OUTCAST.invokeExact(wordnet);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+    static String outcast(Object outcast, String[] nouns) {
+        try {return (String) OUTCAST_OF.invokeExact(outcast, nouns);}
+        catch (Throwable t) {throw rethrow(t);}
+    }
+
+
+    /* Handle lookup, with receivers and results erased to Object for invokeExact. */
+
+    private static Class<?> type(String name) {
+        try {return Class.forName(name);}
+        catch (ClassNotFoundException e) {throw new IllegalStateException("algs2 class not on classpath: " + name, e);}
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... params) {
+        try {
+            MethodHandle h = LOOKUP.findConstructor(owner, MethodType.methodType(void.class, params));
+            return h.asType(MethodType.methodType(Object.class, erase(params)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle function(Class<?> owner, String name, Class<?> result, Class<?>... params) {
+        try {
+            MethodHandle h = LOOKUP.findStatic(owner, name, MethodType.methodType(result, params));
+            return h.asType(MethodType.methodType(erase(result), erase(params)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle method(Class<?> owner, String name, Class<?> result, Class<?>... params) {
+        try {
+            MethodHandle h = LOOKUP.findVirtual(owner, name, MethodType.methodType(result, params));
+            return h.asType(MethodType.methodType(erase(result), erase(params))
+                             .insertParameterTypes(0, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* algs2 types become Object; JDK, algs4 and primitive types stay as they are. */
+    private static Class<?> erase(Class<?> type) {
+        return type == WORDNET || type == SAP || type == OUTCAST ? Object.class : type;
+    }
+
+    private static Class<?>[] erase(Class<?>[] types) {
+        Class<?>[] erased = new Class<?>[types.length];
+        for (int i = 0; i < types.length; i++) erased[i] = erase(types[i]);
+        return erased;
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) return (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        return new IllegalStateException(t);
+    }
+
+
+}
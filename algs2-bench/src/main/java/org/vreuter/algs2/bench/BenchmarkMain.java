@@ -0,0 +1,31 @@
+package org.vreuter.algs2.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks, accepting the usual JMH command line, with the
+ * GC profiler always on so that each result comes with its allocation
+ * per operation (gc.alloc.rate.norm) next to its throughput.
+ *
+ * @author Vince Reuter
+ */
+public final class BenchmarkMain {
+
+
+    private BenchmarkMain() {}
+
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+
+}
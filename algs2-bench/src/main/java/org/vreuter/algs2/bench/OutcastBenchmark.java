@@ -0,0 +1,77 @@
+package org.vreuter.algs2.bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Outcast detection over random noun groups of several sizes; work
+ * grows linearly in searches and quadratically in merges with size.
+ *
+ * @author Vince Reuter
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class OutcastBenchmark {
+
+
+    private static final int GROUPS = 1 << 8;
+
+
+    /** Shared Outcast and the groups to evaluate. */
+    @State(Scope.Benchmark)
+    public static class Groups {
+
+        @Param({"5", "20", "100"})
+        int size;
+
+        Object outcast;
+        String[][] groups = new String[GROUPS][];
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Object wordnet = Algs2.newWordNet(WordNetData.SYNSETS, WordNetData.HYPERNYMS);
+            this.outcast = Algs2.newOutcast(wordnet);
+            List<String> nouns = WordNetData.nouns(wordnet);
+            Random random = new Random(WordNetData.SEED);
+            for (int g = 0; g < GROUPS; g++) {
+                this.groups[g] = new String[this.size];
+                for (int i = 0; i < this.size; i++) {
+                    this.groups[g][i] = nouns.get(random.nextInt(nouns.size()));
+                }
+            }
+        }
+
+    }
+
+
+    /** Per-thread position in the group sample. */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+
+    @Benchmark
+    public String outcast(Groups groups, Cursor cursor) {
+        return Algs2.outcast(groups.outcast, groups.groups[cursor.next++ & (GROUPS - 1)]);
+    }
+
+
+}
@@ -0,0 +1,140 @@
+package org.vreuter.algs2.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import edu.princeton.cs.algs4.Digraph;
+
+/**
+ * Vertex pairs over the hypernym graph, grouped by how far apart they
+ * are, so that early termination and the worst case are measured
+ * separately. The graph carries an extra chain of vertices that no
+ * synset reaches, to supply disconnected pairs. The class and Kind are
+ * public because JMH's generated code, in a package of its own, sets
+ * the kind parameter.
+ *
+ * @author Vince Reuter
+ */
+public final class QueryPairs {
+
+
+    /** How far apart the two vertices of each pair are. */
+    public enum Kind {
+        /* Siblings: both vertices share a hypernym, so the SAP has length 2. */
+        NEAR,
+        /* The longest SAPs among many random pairs. */
+        FAR,
+        /* One synset and one vertex of the unreachable chain. */
+        DISCONNECTED
+    }
+
+    static final int CHAIN = 128;
+    private static final int FAR_SAMPLES_PER_PAIR = 10;
+
+    final Digraph G;
+    final int synsets;
+    private final Digraph R;
+    final int[] v;
+    final int[] w;
+
+
+    /**
+     * Build the graph and pick pairs of one kind.
+     *
+     * @param kind how far apart pairs should be
+     * @param pairs number of pairs
+     */
+    QueryPairs(Kind kind, int pairs) {
+        this.G = WordNetData.hypernyms(CHAIN);
+        this.synsets = this.G.V() - CHAIN;
+        for (int c = this.synsets + 1; c < this.G.V(); c++) this.G.addEdge(c, c - 1);
+        this.R = this.G.reverse();
+        this.v = new int[pairs];
+        this.w = new int[pairs];
+        Random random = new Random(WordNetData.SEED);
+        switch (kind) {
+            case NEAR:         near(random); break;
+            case FAR:          far(random); break;
+            case DISCONNECTED: disconnected(random); break;
+            default: throw new IllegalArgumentException("Unknown pair kind: " + kind);
+        }
+    }
+
+
+    /**
+     * Grow a vertex into a group: the vertex plus its nearest neighbours,
+     * ignoring edge direction, so a group of a far pair stays far.
+     *
+     * @param seed vertex to start from
+     * @param size group size
+     * @return up to size vertices, seed first
+     */
+    List<Integer> group(int seed, int size) {
+        List<Integer> group = new ArrayList<Integer>(size);
+        boolean[] seen = new boolean[this.G.V()];
+        group.add(seed);
+        seen[seed] = true;
+        for (int i = 0; i < group.size() && group.size() < size; i++) {
+            int x = group.get(i);
+            for (Digraph D : Arrays.asList(this.G, this.R)) {
+                for (int y : D.adj(x)) {
+                    if (seen[y] || group.size() == size) continue;
+                    seen[y] = true;
+                    group.add(y);
+                }
+            }
+        }
+        return group;
+    }
+
+
+    private void near(Random random) {
+        for (int i = 0; i < this.v.length; ) {
+            int x = random.nextInt(this.synsets);
+            if (this.G.outdegree(x) == 0) continue;
+            int parent = this.G.adj(x).iterator().next();
+            if (this.R.outdegree(parent) < 2) continue;
+            int k = random.nextInt(this.R.outdegree(parent));
+            for (int y : this.R.adj(parent)) {
+                if (k-- == 0 && y != x) {
+                    this.v[i] = x;
+                    this.w[i++] = y;
+                    break;
+                }
+            }
+        }
+    }
+
+
+    /* Candidates pack (length, v, w) into a long, 20 bits per vertex, to sort by length. */
+    private void far(Random random) {
+        if (this.synsets > 1 << 20) throw new IllegalArgumentException("Too many synsets to pack: " + this.synsets);
+        Object sap = Algs2.newSAP(this.G);
+        int samples = FAR_SAMPLES_PER_PAIR * this.v.length;
+        long[] candidates = new long[samples];
+        for (int s = 0; s < samples; s++) {
+            int x = random.nextInt(this.synsets);
+            int y = random.nextInt(this.synsets);
+            long length = Algs2.length(sap, x, y);
+            candidates[s] = length << 40 | (long) x << 20 | y;
+        }
+        Arrays.sort(candidates);
+        for (int i = 0; i < this.v.length; i++) {
+            long c = candidates[samples - 1 - i];
+            this.v[i] = (int) (c >>> 20 & 0xFFFFF);
+            this.w[i] = (int) (c & 0xFFFFF);
+        }
+    }
+
+
+    private void disconnected(Random random) {
+        for (int i = 0; i < this.v.length; i++) {
+            this.v[i] = random.nextInt(this.synsets);
+            this.w[i] = this.synsets + random.nextInt(CHAIN);
+        }
+    }
+
+
+}
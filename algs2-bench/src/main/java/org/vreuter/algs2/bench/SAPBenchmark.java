@@ -0,0 +1,117 @@
+package org.vreuter.algs2.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SAP length queries over the hypernym graph, between single vertices
+ * and between groups of vertices, for near, far and disconnected pairs.
+ * A group is the pair's vertex together with its nearest neighbours;
+ * groups of 256 make 512 sources per query, enough for SAP to search
+ * them in parallel, while groups of 8 search sequentially.
+ * Each case runs both searching and with precomputed ancestor labels,
+ * and batchLengths answers the whole pair sample in one batched call.
+ * boundedLength asks only whether each pair is within a few hops.
+ *
+ * @author Vince Reuter
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SAPBenchmark {
+
+
+    private static final int PAIRS = 1 << 10;
+
+    // Hop limit for bounded queries, as for a "closely related?" check
+    private static final int BOUND = 4;
+
+
+    /** Shared SAP and the pairs (and groups) to query. */
+    @State(Scope.Benchmark)
+    public static class Queries {
+
+        @Param({"NEAR", "FAR", "DISCONNECTED"})
+        QueryPairs.Kind kind;
+
+        @Param({"8", "256"})
+        int groupSize;
+
+        /* Whether to answer from precomputed ancestor labels instead of searching */
+        @Param({"false", "true"})
+        boolean labels;
+
+        Object sap;
+        int[] v;
+        int[] w;
+        List<List<Integer>> groupsV = new ArrayList<List<Integer>>(PAIRS);
+        List<List<Integer>> groupsW = new ArrayList<List<Integer>>(PAIRS);
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            QueryPairs pairs = new QueryPairs(this.kind, PAIRS);
+            this.sap = Algs2.newSAP(pairs.G);
+            if (this.labels) this.sap = Algs2.withLabels(this.sap);
+            this.v = pairs.v;
+            this.w = pairs.w;
+            for (int i = 0; i < PAIRS; i++) {
+                this.groupsV.add(pairs.group(this.v[i], this.groupSize));
+                this.groupsW.add(pairs.group(this.w[i], this.groupSize));
+            }
+        }
+
+    }
+
+
+    /** Per-thread position in the pair sample. */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+
+    @Benchmark
+    public int length(Queries queries, Cursor cursor) {
+        int i = cursor.next++ & (PAIRS - 1);
+        return Algs2.length(queries.sap, queries.v[i], queries.w[i]);
+    }
+
+
+    @Benchmark
+    public int boundedLength(Queries queries, Cursor cursor) {
+        int i = cursor.next++ & (PAIRS - 1);
+        return Algs2.boundedLength(queries.sap, queries.v[i], queries.w[i], BOUND);
+    }
+
+
+    /* All pairs in one batch call; divide the time per operation by PAIRS for a per-pair figure. */
+    @Benchmark
+    public int[] batchLengths(Queries queries) {
+        return Algs2.lengths(queries.sap, queries.v, queries.w);
+    }
+
+
+    @Benchmark
+    public int groupLength(Queries queries, Cursor cursor) {
+        int i = cursor.next++ & (PAIRS - 1);
+        return Algs2.length(queries.sap, queries.groupsV.get(i), queries.groupsW.get(i));
+    }
+
+
+}
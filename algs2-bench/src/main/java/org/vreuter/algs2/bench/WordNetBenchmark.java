@@ -0,0 +1,131 @@
+package org.vreuter.algs2.bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * WordNet construction from the text files, noun-to-noun distance
+ * queries over a fixed sample of random noun pairs, and k-nearest-noun
+ * queries from the first noun of each pair; also is-a queries on the
+ * same pairs, and every hypernym of the second noun of each, answered
+ * from the hypernym closure (built during warmup). Queries run both
+ * with synsets numbered as in the file and renumbered in locality order.
+ *
+ * @author Vince Reuter
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class WordNetBenchmark {
+
+
+    private static final int PAIRS = 1 << 12;
+
+
+    /** Shared WordNet and the noun pairs to query. */
+    @State(Scope.Benchmark)
+    public static class Queries {
+
+        /* Whether to renumber synsets breadth-first from the root before querying */
+        @Param({"false", "true"})
+        boolean localityOrder;
+
+        Object wordnet;
+        String[] nounA = new String[PAIRS];
+        String[] nounB = new String[PAIRS];
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            this.wordnet = Algs2.newWordNet(WordNetData.SYNSETS, WordNetData.HYPERNYMS);
+            if (this.localityOrder) this.wordnet = Algs2.withLocalityOrder(this.wordnet);
+            List<String> nouns = WordNetData.nouns(this.wordnet);
+            Random random = new Random(WordNetData.SEED);
+            for (int i = 0; i < PAIRS; i++) {
+                this.nounA[i] = nouns.get(random.nextInt(nouns.size()));
+                this.nounB[i] = nouns.get(random.nextInt(nouns.size()));
+            }
+        }
+
+    }
+
+
+    /** How many nearest nouns to ask for. */
+    @State(Scope.Benchmark)
+    public static class Neighbours {
+
+        @Param({"10", "100"})
+        int k;
+
+    }
+
+
+    /** Per-thread position in the pair sample. */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 10)
+    @Measurement(iterations = 5, time = 10)
+    public Object construct() {
+        return Algs2.newWordNet(WordNetData.SYNSETS, WordNetData.HYPERNYMS);
+    }
+
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public int distance(Queries queries, Cursor cursor) {
+        int i = cursor.next++ & (PAIRS - 1);
+        return Algs2.distance(queries.wordnet, queries.nounA[i], queries.nounB[i]);
+    }
+
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public boolean isHypernymOf(Queries queries, Cursor cursor) {
+        int i = cursor.next++ & (PAIRS - 1);
+        return Algs2.isHypernymOf(queries.wordnet, queries.nounA[i], queries.nounB[i]);
+    }
+
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public int[] hypernyms(Queries queries, Cursor cursor) {
+        int i = cursor.next++ & (PAIRS - 1);
+        return Algs2.hypernyms(queries.wordnet, queries.nounB[i]);
+    }
+
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public Object nearest(Queries queries, Neighbours neighbours, Cursor cursor) {
+        int i = cursor.next++ & (PAIRS - 1);
+        return Algs2.nearest(queries.wordnet, queries.nounA[i], neighbours.k);
+    }
+
+
+}
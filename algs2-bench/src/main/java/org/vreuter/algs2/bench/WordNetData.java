@@ -0,0 +1,70 @@
+package org.vreuter.algs2.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.princeton.cs.algs4.Digraph;
+import edu.princeton.cs.algs4.In;
+
+/**
+ * Locations of the WordNet files the benchmarks read, and the raw
+ * hypernym graph for benchmarks that query SAP directly. Paths come
+ * from the wordnet.synsets and wordnet.hypernyms system properties.
+ *
+ * @author Vince Reuter
+ */
+final class WordNetData {
+
+
+    static final String SYNSETS = System.getProperty("wordnet.synsets", "synsets.txt");
+    static final String HYPERNYMS = System.getProperty("wordnet.hypernyms", "hypernyms.txt");
+
+    /* Fixed seed, so every fork and every run queries the same inputs. */
+    static final long SEED = 20160417L;
+
+    private WordNetData() {}
+
+
+    /**
+     * Read the hypernym graph, leaving room for extra vertices.
+     *
+     * @param extra number of isolated vertices to append after the synsets
+     * @return graph with one vertex per synset, plus the extra vertices
+     */
+    static Digraph hypernyms(int extra) {
+        List<int[]> lines = new ArrayList<int[]>();
+        int V = 0;
+        In in = new In(HYPERNYMS);
+        while (in.hasNextLine()) {
+            String line = in.readLine().trim();
+            if (line.isEmpty()) continue;
+            String[] fields = line.split(",");
+            int[] ids = new int[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                ids[i] = Integer.parseInt(fields[i]);
+                V = Math.max(V, ids[i] + 1);
+            }
+            lines.add(ids);
+        }
+        Digraph G = new Digraph(V + extra);
+        for (int[] ids : lines) {
+            for (int i = 1; i < ids.length; i++) G.addEdge(ids[0], ids[i]);
+        }
+        return G;
+    }
+
+
+    /**
+     * List every WordNet noun.
+     *
+     * @param wordnet WordNet to read
+     * @return nouns, in the WordNet's iteration order
+     */
+    static List<String> nouns(Object wordnet) {
+        List<String> nouns = new ArrayList<String>();
+        for (String noun : Algs2.nouns(wordnet)) nouns.add(noun);
+        return nouns;
+    }
+
+
+}
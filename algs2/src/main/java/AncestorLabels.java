@@ -0,0 +1,426 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+
+/**
+ * Exact distance oracle for shortest ancestral paths: a hub labeling in
+ * which each vertex's label is its full ancestor set, sorted by vertex,
+ * with the BFS distance to each ancestor. Every common ancestor of v and
+ * w is in both labels, so one linear merge of the two labels finds the
+ * SAP, with no graph traversal. Labels are stored for all vertices in
+ * compressed sparse row form: the label of v is entries
+ * labelOffsets[v] through labelOffsets[v + 1] - 1 of two parallel
+ * arrays of ancestors and distances.
+ *
+ * That's only compact when ancestor sets are small, as in WordNet's
+ * rooted DAG, where they're a few dozen vertices at most; in general
+ * the total size is the sum of all ancestor set sizes.
+ *
+ * @author Vince Reuter
+ */
+final class AncestorLabels {
+
+
+    private final int[] labelOffsets;
+    private final int[] ancestors;
+    private final int[] distances;
+
+
+    /* Adopt finished CSR arrays; caller gives up ownership. */
+    AncestorLabels(int[] labelOffsets, int[] ancestors, int[] distances) {
+        this.labelOffsets = labelOffsets;
+        this.ancestors = ancestors;
+        this.distances = distances;
+    }
+
+
+    /**
+     * Label every vertex of a graph with one exhaustive upward BFS per
+     * vertex, run in parallel on the common fork-join pool.
+     *
+     * @param G graph to label
+     * @return labels of every vertex of G
+     * @throws IllegalArgumentException if the labels would have over 2^31 entries
+     */
+    static AncestorLabels build(ImmutableDigraph G) {
+        int V = G.V();
+        int[] all = new int[V];
+        for (int v = 0; v < V; v++) all[v] = v;
+        return assemble(V, all, search(G, all), null);
+    }
+
+
+    /**
+     * Relabel after edges were added to the graph (and perhaps vertices,
+     * numbered after the existing ones). Only the descendants of the new
+     * edges' tails can have gained ancestors, so only they are searched
+     * again; every other label is copied.
+     *
+     * @param G graph with the new edges
+     * @param hyponyms reverse of G
+     * @param tails tails of the new edges
+     * @param count number of new edges
+     * @return labels of every vertex of G; these labels are unchanged
+     * @throws IllegalArgumentException if the labels would have over 2^31 entries
+     */
+    AncestorLabels update(ImmutableDigraph G, ImmutableDigraph hyponyms, int[] tails, int count) {
+        int V = G.V();
+
+        /* Stale labels: the tails' descendants, and new vertices (which have none yet). */
+        boolean[] stale = new boolean[V];
+        int[] queue = new int[V];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (!stale[tails[i]]) {
+                stale[tails[i]] = true;
+                queue[n++] = tails[i];
+            }
+        }
+        int[] hyponymOffsets = hyponyms.offsets();
+        int[] hyponymTargets = hyponyms.targets();
+        for (int head = 0; head < n; head++) {
+            int x = queue[head];
+            for (int e = hyponymOffsets[x]; e < hyponymOffsets[x + 1]; e++) {
+                int y = hyponymTargets[e];
+                if (!stale[y]) {
+                    stale[y] = true;
+                    queue[n++] = y;
+                }
+            }
+        }
+        for (int v = V(); v < V; v++) {
+            if (!stale[v]) {
+                stale[v] = true;
+                queue[n++] = v;
+            }
+        }
+        int[] relabeled = Arrays.copyOf(queue, n);
+        Arrays.sort(relabeled);
+        return assemble(V, relabeled, search(G, relabeled), this);
+    }
+
+
+    /**
+     * Renumber the labels' graph: vertex v becomes positions[v] (a
+     * permutation of the vertices), both as a labeled vertex and as an
+     * ancestor. Each label is re-sorted by its new ancestor numbers.
+     *
+     * @param positions new number of each vertex
+     * @return labels of the renumbered graph; these labels are unchanged
+     */
+    AncestorLabels permuted(int[] positions) {
+        int V = V();
+        int[] permutedOffsets = new int[V + 1];
+        for (int v = 0; v < V; v++) permutedOffsets[positions[v] + 1] = this.labelOffsets[v + 1] - this.labelOffsets[v];
+        for (int v = 0; v < V; v++) permutedOffsets[v + 1] += permutedOffsets[v];
+        int[] permutedAncestors = new int[size()];
+        int[] permutedDistances = new int[size()];
+        long[] packed = new long[16];
+        for (int v = 0; v < V; v++) {
+            int first = this.labelOffsets[v];
+            int n = this.labelOffsets[v + 1] - first;
+            if (n > packed.length) packed = new long[Math.max(n, 2 * packed.length)];
+            // Sort (ancestor, distance) pairs by new ancestor number, packed into longs.
+            for (int i = 0; i < n; i++) {
+                packed[i] = ((long) positions[this.ancestors[first + i]] << 32) | this.distances[first + i];
+            }
+            Arrays.sort(packed, 0, n);
+            int at = permutedOffsets[positions[v]];
+            for (int i = 0; i < n; i++) {
+                permutedAncestors[at + i] = (int) (packed[i] >>> 32);
+                permutedDistances[at + i] = (int) packed[i];
+            }
+        }
+        return new AncestorLabels(permutedOffsets, permutedAncestors, permutedDistances);
+    }
+
+
+    /* Ancestors of each given vertex, by exhaustive upward BFS in parallel on the common pool. */
+    private static AncestorMap[] search(final ImmutableDigraph G, final int[] vertices) {
+        final ThreadLocal<PairedShortCircuitBFS> engines = new ThreadLocal<PairedShortCircuitBFS>() {
+            protected PairedShortCircuitBFS initialValue() {return new PairedShortCircuitBFS(G);}
+        };
+        AncestorMap[] maps = new AncestorMap[vertices.length];
+        IntStream.range(0, vertices.length).parallel().forEach(i -> maps[i] = engines.get().ancestors(vertices[i]));
+        return maps;
+    }
+
+
+    /*
+     * Lay out labels for V vertices in CSR form: maps[i] for vertices[i]
+     * (ascending), and the old label for any other vertex.
+     */
+    private static AncestorLabels assemble(int V, int[] vertices, AncestorMap[] maps, AncestorLabels old) {
+        long total = 0;
+        int[] labelOffsets = new int[V + 1];
+        for (int v = 0, i = 0; v < V; v++) {
+            if (i < vertices.length && vertices[i] == v) total += maps[i++].size();
+            else total += old.labelOffsets[v + 1] - old.labelOffsets[v];
+            if (total > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many ancestors to label: over " + Integer.MAX_VALUE);
+            }
+            labelOffsets[v + 1] = (int) total;
+        }
+        int[] ancestors = new int[(int) total];
+        int[] distances = new int[(int) total];
+        for (int v = 0, i = 0; v < V; v++) {
+            int e = labelOffsets[v];
+            if (i < vertices.length && vertices[i] == v) {
+                AncestorMap map = maps[i];
+                for (int j = 0; j < map.size(); j++, e++) {
+                    ancestors[e] = map.vertex(j);
+                    distances[e] = map.distance(j);
+                }
+                maps[i++] = null;
+            } else {
+                int length = labelOffsets[v + 1] - e;
+                System.arraycopy(old.ancestors, old.labelOffsets[v], ancestors, e, length);
+                System.arraycopy(old.distances, old.labelOffsets[v], distances, e, length);
+            }
+        }
+        return new AncestorLabels(labelOffsets, ancestors, distances);
+    }
+
+
+    /** Number of labeled vertices. */
+    int V() {return this.labelOffsets.length - 1;}
+
+
+    /** Total number of label entries, over all vertices. */
+    int size() {return this.ancestors.length;}
+
+
+    /**
+     * Merge the labels of v and w for their SAP length.
+     *
+     * @param v one query vertex
+     * @param w other query vertex
+     * @return length of SAP between v and w; -1 if nonexistent
+     */
+    int length(int v, int w) {
+        int best = Integer.MAX_VALUE;
+        int i = this.labelOffsets[v];
+        int j = this.labelOffsets[w];
+        int iEnd = this.labelOffsets[v + 1];
+        int jEnd = this.labelOffsets[w + 1];
+        // Branch-free merge: advance whichever side is behind (both on a match).
+        while (i < iEnd && j < jEnd) {
+            int a = this.ancestors[i];
+            int b = this.ancestors[j];
+            if (a == b) best = Math.min(best, this.distances[i] + this.distances[j]);
+            i += a <= b ? 1 : 0;
+            j += a >= b ? 1 : 0;
+        }
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+
+    /**
+     * Merge the labels of v and w for their SAP. Ties go to the
+     * lowest-numbered ancestor.
+     *
+     * @param v one query vertex
+     * @param w other query vertex
+     * @return SAP components, without vertex sequences
+     */
+    AncestralPath meet(int v, int w) {
+        return meet(this.ancestors, this.distances, this.labelOffsets[v], this.labelOffsets[v + 1],
+                    this.ancestors, this.distances, this.labelOffsets[w], this.labelOffsets[w + 1]);
+    }
+
+
+    /**
+     * Find the SAP between two groups. Each group's labels are first
+     * merged into one, with each ancestor's distance from the nearest
+     * vertex of the group, so the two groups meet in a single linear
+     * merge however many vertices they have. Ties go to the
+     * lowest-numbered ancestor.
+     *
+     * @param v one group of query vertices
+     * @param w other group of query vertices
+     * @return SAP components, without vertex sequences
+     */
+    AncestralPath meet(Iterable<Integer> v, Iterable<Integer> w) {
+        Label labelV = union(toArray(v));
+        Label labelW = union(toArray(w));
+        return meet(labelV.ancestors, labelV.distances, labelV.from, labelV.to,
+                    labelW.ancestors, labelW.distances, labelW.from, labelW.to);
+    }
+
+
+    /* Merge two sorted labels, given as ranges of (ancestor, distance) arrays, for their SAP. */
+    private static AncestralPath meet(int[] ancestorsA, int[] distancesA, int i, int iEnd,
+                                      int[] ancestorsB, int[] distancesB, int j, int jEnd) {
+        int best = Integer.MAX_VALUE;
+        int bestI = -1;
+        int bestJ = -1;
+        while (i < iEnd && j < jEnd) {
+            int a = ancestorsA[i];
+            int b = ancestorsB[j];
+            if (a < b) i++;
+            else if (a > b) j++;
+            else {
+                if (distancesA[i] + distancesB[j] < best) {
+                    best = distancesA[i] + distancesB[j];
+                    bestI = i;
+                    bestJ = j;
+                }
+                i++;
+                j++;
+            }
+        }
+        if (bestI == -1) return AncestralPath.NO_PATH;
+        return new AncestralPath(ancestorsA[bestI], distancesA[bestI], distancesB[bestJ], null, null);
+    }
+
+
+    /**
+     * Copy out the label of v.
+     *
+     * @param v query vertex
+     * @return ancestors of v (v included) and their distances
+     */
+    AncestorMap ancestors(int v) {
+        int from = this.labelOffsets[v];
+        int to = this.labelOffsets[v + 1];
+        return new AncestorMap(Arrays.copyOfRange(this.ancestors, from, to),
+                               Arrays.copyOfRange(this.distances, from, to));
+    }
+
+
+    /**
+     * Union the labels of a group, keeping each ancestor's smallest distance.
+     *
+     * @param sources group of query vertices
+     * @return ancestors of the group (sources included) and their distances
+     */
+    AncestorMap ancestors(Iterable<Integer> sources) {
+        Label label = union(toArray(sources));
+        return new AncestorMap(Arrays.copyOfRange(label.ancestors, label.from, label.to),
+                               Arrays.copyOfRange(label.distances, label.from, label.to));
+    }
+
+
+    /*
+     * Union the labels of a group, keeping each ancestor's smallest
+     * distance, by a k-way merge: rounds of pairwise linear merges of
+     * the sorted labels, between two buffers, so that every entry is
+     * moved about log k times. A single vertex's label is used in place.
+     */
+    private Label union(int[] group) {
+        if (group.length == 1) {
+            return new Label(this.ancestors, this.distances,
+                             this.labelOffsets[group[0]], this.labelOffsets[group[0] + 1]);
+        }
+        int k = group.length;
+        int n = 0;
+        for (int s : group) n += this.labelOffsets[s + 1] - this.labelOffsets[s];
+        int[] ancestors = new int[n];
+        int[] distances = new int[n];
+        int[] mergedAncestors = new int[n];
+        int[] mergedDistances = new int[n];
+
+        /* Copy the labels side by side as runs; run r is entries runs[r] through runs[r + 1] - 1. */
+        int[] runs = new int[k + 1];
+        for (int r = 0; r < k; r++) {
+            int from = this.labelOffsets[group[r]];
+            int length = this.labelOffsets[group[r] + 1] - from;
+            System.arraycopy(this.ancestors, from, ancestors, runs[r], length);
+            System.arraycopy(this.distances, from, distances, runs[r], length);
+            runs[r + 1] = runs[r] + length;
+        }
+
+        /* Merge runs in pairs until one is left. */
+        for (int count = k; count > 1; count = (count + 1) / 2) {
+            int at = 0;
+            for (int r = 0; r < count; r += 2) {
+                int start = at;
+                if (r + 1 == count) {
+                    int length = runs[r + 1] - runs[r];
+                    System.arraycopy(ancestors, runs[r], mergedAncestors, at, length);
+                    System.arraycopy(distances, runs[r], mergedDistances, at, length);
+                    at += length;
+                } else {
+                    at = mergeMin(ancestors, distances, runs[r], runs[r + 1], runs[r + 2],
+                                  mergedAncestors, mergedDistances, at);
+                }
+                runs[r / 2] = start;
+            }
+            runs[(count + 1) / 2] = at;
+            int[] swap = ancestors;
+            ancestors = mergedAncestors;
+            mergedAncestors = swap;
+            swap = distances;
+            distances = mergedDistances;
+            mergedDistances = swap;
+        }
+        return new Label(ancestors, distances, 0, k == 0 ? 0 : runs[1]);
+    }
+
+
+    /*
+     * Merge two adjacent sorted runs, [i, mid) and [mid, end), into the
+     * output from position at, keeping the smaller distance of an ancestor
+     * in both. Returns the output position after the merged run.
+     */
+    private static int mergeMin(int[] ancestors, int[] distances, int i, int mid, int end,
+                                int[] outAncestors, int[] outDistances, int at) {
+        int j = mid;
+        // Branch-free merge, as in length(int, int).
+        while (i < mid && j < end) {
+            int a = ancestors[i];
+            int b = ancestors[j];
+            int da = distances[i];
+            int db = distances[j];
+            outAncestors[at] = a < b ? a : b;
+            outDistances[at++] = a < b ? da : a > b ? db : Math.min(da, db);
+            i += a <= b ? 1 : 0;
+            j += a >= b ? 1 : 0;
+        }
+        for (; i < mid; i++, at++) {
+            outAncestors[at] = ancestors[i];
+            outDistances[at] = distances[i];
+        }
+        for (; j < end; j++, at++) {
+            outAncestors[at] = ancestors[j];
+            outDistances[at] = distances[j];
+        }
+        return at;
+    }
+
+
+    private static int[] toArray(Iterable<Integer> group) {
+        int n = 0;
+        for (int ignored : group) n++;
+        int[] vertices = new int[n];
+        n = 0;
+        for (int s : group) vertices[n++] = s;
+        return vertices;
+    }
+
+
+    /* A sorted label: entries from through to - 1 of parallel ancestor and distance arrays. */
+    private static final class Label {
+
+        final int[] ancestors;
+        final int[] distances;
+        final int from;
+        final int to;
+
+        Label(int[] ancestors, int[] distances, int from, int to) {
+            this.ancestors = ancestors;
+            this.distances = distances;
+            this.from = from;
+            this.to = to;
+        }
+
+    }
+
+
+    /* CSR arrays, for the snapshot writer; never modified. */
+    int[] labelOffsets() {return this.labelOffsets;}
+    int[] ancestors() {return this.ancestors;}
+    int[] distances() {return this.distances;}
+
+
+}
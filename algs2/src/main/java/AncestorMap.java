@@ -0,0 +1,108 @@
+/**
+ * Every ancestor reachable from a group of source vertices, with
+ * its BFS distance from the nearest source, sorted by vertex. Two
+ * maps are combined by a linear merge to get the shortest ancestral
+ * path between their groups, with no further graph traversal.
+ *
+ * @author Vince Reuter
+ */
+public final class AncestorMap {
+
+
+    private final int[] vertices;
+    private final int[] distances;
+
+
+    /**
+     * Adopt parallel arrays of ancestors (strictly increasing) and distances.
+     *
+     * @param vertices ancestors, sorted ascending
+     * @param distances distance to each ancestor
+     */
+    AncestorMap(int[] vertices, int[] distances) {
+        this.vertices = vertices;
+        this.distances = distances;
+    }
+
+
+    /**
+     * Count the ancestors, sources included.
+     *
+     * @return number of ancestors
+     */
+    public int size() {return this.vertices.length;}
+
+
+    /* Positional accessors, in increasing vertex order */
+    public int vertex(int i) {return this.vertices[i];}
+    public int distance(int i) {return this.distances[i];}
+
+
+    /**
+     * Look up the distance to an ancestor.
+     *
+     * @param v query vertex
+     * @return distance from nearest source to v; -1 if v isn't an ancestor
+     */
+    public int distanceTo(int v) {
+        int lo = 0;
+        int hi = this.vertices.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.vertices[mid] < v) lo = mid + 1;
+            else if (this.vertices[mid] > v) hi = mid - 1;
+            else return this.distances[mid];
+        }
+        return -1;
+    }
+
+
+    /**
+     * Find the length of the shortest ancestral path between two groups.
+     *
+     * @param a ancestors of one group
+     * @param b ancestors of the other group
+     * @return length of SAP between the groups; -1 if nonexistent
+     */
+    public static int length(AncestorMap a, AncestorMap b) {
+        int best = Integer.MAX_VALUE;
+        for (int i = 0, j = 0; i < a.vertices.length && j < b.vertices.length; ) {
+            if (a.vertices[i] < b.vertices[j]) i++;
+            else if (a.vertices[i] > b.vertices[j]) j++;
+            else best = Math.min(best, a.distances[i++] + b.distances[j++]);
+        }
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+
+    /**
+     * Find the shortest ancestral path between two groups. Ties go
+     * to the lowest-numbered ancestor.
+     *
+     * @param a ancestors of one (v side) group
+     * @param b ancestors of the other (w side) group
+     * @return SAP components, without vertex sequences
+     */
+    public static AncestralPath meet(AncestorMap a, AncestorMap b) {
+        int best = Integer.MAX_VALUE;
+        int bestA = -1;
+        int bestB = -1;
+        for (int i = 0, j = 0; i < a.vertices.length && j < b.vertices.length; ) {
+            if (a.vertices[i] < b.vertices[j]) i++;
+            else if (a.vertices[i] > b.vertices[j]) j++;
+            else {
+                if (a.distances[i] + b.distances[j] < best) {
+                    best = a.distances[i] + b.distances[j];
+                    bestA = i;
+                    bestB = j;
+                }
+                i++;
+                j++;
+            }
+        }
+        if (bestA == -1) return AncestralPath.NO_PATH;
+        return new AncestralPath(a.vertices[bestA], a.distances[bestA], b.distances[bestB], null, null);
+    }
+
+
+}
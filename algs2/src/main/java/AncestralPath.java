@@ -0,0 +1,135 @@
+/**
+ * Result of a shortest ancestral path (SAP) query: the total
+ * length, the nearest common ancestor, and the distance to that
+ * ancestor from each query side, all as primitives. The vertex
+ * sequences themselves are only present when they were asked for.
+ *
+ * @author Vince Reuter
+ */
+public final class AncestralPath {
+
+
+    // Sentinel for each field when there's no common ancestor
+    private static final int NONE = -1;
+
+    /** Result for query sides that share no common ancestor. */
+    public static final AncestralPath NO_PATH = new AncestralPath(NONE, NONE, NONE, null, null);
+
+    private final int ancestor;
+    private final int distanceFromV;
+    private final int distanceFromW;
+    private final int[] pathFromV;
+    private final int[] pathFromW;
+
+
+    /**
+     * Store the components of a shortest ancestral path.
+     *
+     * @param ancestor nearest common ancestor
+     * @param distanceFromV distance to ancestor from nearest vertex on v side
+     * @param distanceFromW distance to ancestor from nearest vertex on w side
+     * @param pathFromV vertices from v side to ancestor, or null if not built
+     * @param pathFromW vertices from w side to ancestor, or null if not built
+     */
+    AncestralPath(int ancestor, int distanceFromV, int distanceFromW,
+                  int[] pathFromV, int[] pathFromW) {
+        this.ancestor = ancestor;
+        this.distanceFromV = distanceFromV;
+        this.distanceFromW = distanceFromW;
+        this.pathFromV = pathFromV;
+        this.pathFromW = pathFromW;
+    }
+
+
+    /**
+     * Determine whether the query sides share a common ancestor.
+     *
+     * @return whether the query sides share a common ancestor
+     */
+    public boolean exists() {return this.ancestor != NONE;}
+
+
+    /**
+     * Get the total length of the shortest ancestral path.
+     *
+     * @return length of SAP; -1 if nonexistent
+     */
+    public int length() {
+        return exists() ? this.distanceFromV + this.distanceFromW : NONE;
+    }
+
+
+    /**
+     * Get the common ancestor that creates the shortest ancestral path.
+     *
+     * @return nearest common ancestor; -1 if nonexistent
+     */
+    public int ancestor() {return this.ancestor;}
+
+
+    /**
+     * Get the distance to the ancestor from the nearest v-side vertex.
+     *
+     * @return distance from v side to ancestor; -1 if nonexistent
+     */
+    public int distanceFromV() {return this.distanceFromV;}
+
+
+    /**
+     * Get the distance to the ancestor from the nearest w-side vertex.
+     *
+     * @return distance from w side to ancestor; -1 if nonexistent
+     */
+    public int distanceFromW() {return this.distanceFromW;}
+
+
+    /**
+     * Determine whether the vertex sequences were built for this result.
+     *
+     * @return whether path vertices are available
+     */
+    public boolean hasPaths() {return this.pathFromV != null || !exists();}
+
+
+    /**
+     * Get the vertices from the nearest v-side vertex up to the ancestor.
+     *
+     * @return copy of path from v side, ancestor last; empty if nonexistent
+     * @throws IllegalStateException if the query didn't ask for paths
+     */
+    public int[] pathFromV() {return copyPath(this.pathFromV);}
+
+
+    /**
+     * Get the vertices from the nearest w-side vertex up to the ancestor.
+     *
+     * @return copy of path from w side, ancestor last; empty if nonexistent
+     * @throws IllegalStateException if the query didn't ask for paths
+     */
+    public int[] pathFromW() {return copyPath(this.pathFromW);}
+
+
+    /* Same path seen from the other side: v and w swap roles. */
+    AncestralPath reversed() {
+        if (!exists()) return this;
+        return new AncestralPath(this.ancestor, this.distanceFromW, this.distanceFromV,
+                                 this.pathFromW, this.pathFromV);
+    }
+
+
+    /* Defensive copy of a stored path, or complaint if it wasn't built. */
+    private int[] copyPath(int[] path) {
+        if (!exists()) return new int[0];
+        if (path == null) {
+            throw new IllegalStateException("Paths weren't requested for this query");
+        }
+        return path.clone();
+    }
+
+
+    public String toString() {
+        return String.format("length = %d, ancestor = %d", length(), this.ancestor);
+    }
+
+
+}
@@ -0,0 +1,296 @@
+import java.util.Arrays;
+
+
+/**
+ * Compressed transitive closure of a rooted DAG, for is-a queries that
+ * need no graph search. Choosing one hypernym of each vertex as its tree
+ * parent gives a spanning tree hanging from the root; number that tree in
+ * postorder, and a vertex's tree descendants are exactly the postorder
+ * numbers between the lowest in its subtree and its own. A descendant
+ * reached through other hypernym edges brings its own intervals along,
+ * so each vertex keeps the merged intervals of all its descendants, and
+ * "is a an ancestor of d" is a binary search for d's number among a's
+ * intervals. In a mostly tree-shaped hierarchy like WordNet's, nearly
+ * every vertex needs just the one interval.
+ *
+ * The other direction, every ancestor of a vertex, is its chain of tree
+ * parents plus the ancestors off that chain, its exceptions. A vertex
+ * shares the exceptions of its tree parent unless it has other hypernyms
+ * of its own that add some, so exception lists are kept only where they
+ * change, and each vertex points to the nearest list up its chain.
+ *
+ * @author Vince Reuter
+ */
+final class HypernymClosure {
+
+
+    // Spanning tree: each vertex's tree parent (-1 at the root), and its postorder
+    // number with the lowest number in its subtree
+    private final int[] parent;
+    private final int[] post;
+    private final int[] low;
+
+    // Merged postorder intervals of each vertex's descendants, in CSR form, sorted
+    private final int[] intervalOffsets;
+    private final int[] intervalLows;
+    private final int[] intervalHighs;
+
+    // Index of each vertex's exception list, -1 if it has none; and the lists, in CSR form
+    private final int[] exceptionList;
+    private final int[] exceptionOffsets;
+    private final int[] exceptions;
+
+
+    private HypernymClosure(int[] parent, int[] post, int[] low,
+                            int[] intervalOffsets, int[] intervalLows, int[] intervalHighs,
+                            int[] exceptionList, int[] exceptionOffsets, int[] exceptions) {
+        this.parent = parent;
+        this.post = post;
+        this.low = low;
+        this.intervalOffsets = intervalOffsets;
+        this.intervalLows = intervalLows;
+        this.intervalHighs = intervalHighs;
+        this.exceptionList = exceptionList;
+        this.exceptionOffsets = exceptionOffsets;
+        this.exceptions = exceptions;
+    }
+
+
+    /**
+     * Compute the closure of a rooted DAG.
+     *
+     * @param G rooted DAG, edges pointing to hypernyms
+     * @param hyponyms reverse of G
+     * @param topology topological order of G
+     * @return closure of G
+     * @throws IllegalArgumentException if the closure would have over 2^31 entries
+     */
+    static HypernymClosure build(ImmutableDigraph G, ImmutableDigraph hyponyms, TopologicalOrder topology) {
+        int V = G.V();
+        int root = topology.root();
+        int[] offsets = G.offsets();
+        int[] targets = G.targets();
+
+        /* Spanning tree: each vertex hangs from its first hypernym. */
+        int[] parent = new int[V];
+        int[] childOffsets = new int[V + 1];
+        for (int v = 0; v < V; v++) {
+            parent[v] = offsets[v] == offsets[v + 1] ? -1 : targets[offsets[v]];
+            if (parent[v] != -1) childOffsets[parent[v] + 1]++;
+        }
+        for (int v = 0; v < V; v++) childOffsets[v + 1] += childOffsets[v];
+        int[] children = new int[childOffsets[V]];
+        int[] next = Arrays.copyOf(childOffsets, V);
+        for (int v = 0; v < V; v++) if (parent[v] != -1) children[next[parent[v]]++] = v;
+
+        /* Postorder numbers, by iterative DFS down the tree. */
+        int[] post = new int[V];
+        int[] low = new int[V];
+        if (root != -1) {
+            int[] stack = new int[V];
+            int depth = 0;
+            int count = 0;
+            stack[0] = root;
+            low[root] = 0;
+            next = Arrays.copyOf(childOffsets, V);
+            while (depth >= 0) {
+                int x = stack[depth];
+                if (next[x] < childOffsets[x + 1]) {
+                    int y = children[next[x]++];
+                    low[y] = count;
+                    stack[++depth] = y;
+                } else {
+                    post[x] = count++;
+                    depth--;
+                }
+            }
+        }
+
+        /* Intervals, hyponyms first: a vertex's subtree, merged with each hyponym's intervals. */
+        int[] hyponymOffsets = hyponyms.offsets();
+        int[] hyponymTargets = hyponyms.targets();
+        int[] first = new int[V];
+        int[] last = new int[V];
+        IntList lows = new IntList();
+        IntList highs = new IntList();
+        long[] packed = new long[16];
+        for (int i = V - 1; i >= 0; i--) {
+            int x = topology.vertex(i);
+            int m = 0;
+            packed[m++] = interval(low[x], post[x]);
+            for (int e = hyponymOffsets[x]; e < hyponymOffsets[x + 1]; e++) {
+                int y = hyponymTargets[e];
+                // A tree hyponym whose only interval is its subtree adds nothing to x's.
+                if (parent[y] == x && last[y] - first[y] == 1
+                        && lows.get(first[y]) == low[y] && highs.get(first[y]) == post[y]) continue;
+                if (m + last[y] - first[y] > packed.length) {
+                    packed = Arrays.copyOf(packed, Math.max(m + last[y] - first[y], 2 * packed.length));
+                }
+                for (int j = first[y]; j < last[y]; j++) packed[m++] = interval(lows.get(j), highs.get(j));
+            }
+            Arrays.sort(packed, 0, m);
+            first[x] = lows.size();
+            int from = (int) (packed[0] >>> 32);
+            int to = (int) packed[0];
+            for (int j = 1; j < m; j++) {
+                int nextFrom = (int) (packed[j] >>> 32);
+                int nextTo = (int) packed[j];
+                if (nextFrom > to + 1) {
+                    lows.add(from);
+                    highs.add(to);
+                    from = nextFrom;
+                }
+                to = Math.max(to, nextTo);
+            }
+            lows.add(from);
+            highs.add(to);
+            last[x] = lows.size();
+        }
+
+        /* Lay the intervals out by vertex. */
+        int[] intervalOffsets = new int[V + 1];
+        for (int v = 0; v < V; v++) intervalOffsets[v + 1] = intervalOffsets[v] + last[v] - first[v];
+        int[] intervalLows = new int[intervalOffsets[V]];
+        int[] intervalHighs = new int[intervalOffsets[V]];
+        for (int v = 0; v < V; v++) {
+            for (int j = first[v], at = intervalOffsets[v]; j < last[v]; j++, at++) {
+                intervalLows[at] = lows.get(j);
+                intervalHighs[at] = highs.get(j);
+            }
+        }
+
+        /*
+         * Exceptions, hypernyms first. A vertex with hypernyms besides its
+         * tree parent gets its own list if they add ancestors off its chain:
+         * those, with their chains and exceptions, plus its parent's list.
+         */
+        int[] exceptionList = new int[V];
+        IntList exceptionOffsets = new IntList();
+        IntList exceptions = new IntList();
+        exceptionOffsets.add(0);
+        IntList found = new IntList();
+        for (int i = 0; i < V; i++) {
+            int x = topology.vertex(i);
+            int p = parent[x];
+            exceptionList[x] = p == -1 ? -1 : exceptionList[p];
+            found.clear();
+            for (int e = offsets[x] + 1; e < offsets[x + 1]; e++) {
+                for (int y = targets[e]; y != -1; y = parent[y]) {
+                    if (!onChain(low, post, y, x)) found.add(y);
+                }
+                int list = exceptionList[targets[e]];
+                if (list == -1) continue;
+                for (int j = exceptionOffsets.get(list); j < exceptionOffsets.get(list + 1); j++) {
+                    if (!onChain(low, post, exceptions.get(j), x)) found.add(exceptions.get(j));
+                }
+            }
+            if (found.size() == 0) continue;
+            // The parent's exceptions are off its chain, and so off x's: that chain and the parent.
+            int list = exceptionList[x];
+            if (list != -1) {
+                for (int j = exceptionOffsets.get(list); j < exceptionOffsets.get(list + 1); j++) {
+                    found.add(exceptions.get(j));
+                }
+            }
+            int[] sorted = found.toArray();
+            Arrays.sort(sorted);
+            for (int j = 0; j < sorted.length; j++) {
+                if (j == 0 || sorted[j] != sorted[j - 1]) exceptions.add(sorted[j]);
+            }
+            exceptionList[x] = exceptionOffsets.size() - 1;
+            exceptionOffsets.add(exceptions.size());
+        }
+        return new HypernymClosure(parent, post, low, intervalOffsets, intervalLows, intervalHighs,
+                                   exceptionList, exceptionOffsets.toArray(), exceptions.toArray());
+    }
+
+
+    /**
+     * Determine whether a is d or an ancestor of it.
+     *
+     * @param a candidate ancestor
+     * @param d candidate descendant
+     * @return whether a is d or one of its hypernyms, direct or not
+     */
+    boolean reaches(int a, int d) {
+        int number = this.post[d];
+        int lo = this.intervalOffsets[a];
+        int hi = this.intervalOffsets[a + 1] - 1;
+        // Last interval starting at or before d's number
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.intervalLows[mid] <= number) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        return hi >= this.intervalOffsets[a] && number <= this.intervalHighs[hi];
+    }
+
+
+    /**
+     * Find every ancestor of any of the given vertices, the vertices
+     * themselves excepted (unless one is an ancestor of another).
+     *
+     * @param sources query vertices
+     * @return the ancestors, ascending
+     */
+    int[] ancestors(Iterable<Integer> sources) {
+        IntList found = new IntList();
+        for (int s : sources) {
+            for (int y = this.parent[s]; y != -1; y = this.parent[y]) found.add(y);
+            int list = this.exceptionList[s];
+            if (list == -1) continue;
+            for (int j = this.exceptionOffsets[list]; j < this.exceptionOffsets[list + 1]; j++) {
+                found.add(this.exceptions[j]);
+            }
+        }
+        int[] ancestors = found.toArray();
+        Arrays.sort(ancestors);
+        int n = 0;
+        for (int i = 0; i < ancestors.length; i++) {
+            if (i == 0 || ancestors[i] != ancestors[i - 1]) ancestors[n++] = ancestors[i];
+        }
+        return Arrays.copyOf(ancestors, n);
+    }
+
+
+    /** Number of stored intervals and exceptions, over all vertices. */
+    long size() {return (long) this.intervalLows.length + this.exceptions.length;}
+
+
+    /* Whether y is x or one of its tree ancestors, i.e. x is in y's subtree. */
+    private static boolean onChain(int[] low, int[] post, int y, int x) {
+        return low[y] <= post[x] && post[x] <= post[y];
+    }
+
+
+    private static long interval(int from, int to) {return ((long) from << 32) | to;}
+
+
+    /* Growable int array */
+    private static final class IntList {
+
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (this.size == this.values.length) {
+                if (this.size == Integer.MAX_VALUE - 8) {
+                    throw new IllegalArgumentException("Hypernym closure too large: over " + this.size + " entries");
+                }
+                this.values = Arrays.copyOf(this.values, (int) Math.min(2L * this.size, Integer.MAX_VALUE - 8));
+            }
+            this.values[this.size++] = value;
+        }
+
+        int get(int i) {return this.values[i];}
+
+        int size() {return this.size;}
+
+        void clear() {this.size = 0;}
+
+        int[] toArray() {return Arrays.copyOf(this.values, this.size);}
+
+    }
+
+
+}
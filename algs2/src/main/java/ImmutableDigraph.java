@@ -0,0 +1,270 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.princeton.cs.algs4.Digraph;
+
+
+/**
+ * Read-only directed graph. Once built, neither its vertices
+ * nor its edges can change, so a single instance can back any
+ * number of SAP engines (and threads) without defensive copies.
+ *
+ * Edges are stored in compressed sparse row (CSR) form: the heads
+ * of the edges leaving v are targets[offsets[v]] through
+ * targets[offsets[v + 1] - 1]. That's two flat int arrays in place
+ * of a linked list of boxed Integers per vertex, so it takes a
+ * fraction of the heap and a BFS scans adjacency sequentially.
+ *
+ * @author Vince Reuter
+ */
+public final class ImmutableDigraph {
+
+
+    private static final String NEWLINE = System.getProperty("line.separator");
+
+    // CSR adjacency; never exposed outside this package
+    private final int[] offsets;
+    private final int[] targets;
+
+
+    /**
+     * Snapshot the given digraph. Later changes to G aren't seen here.
+     *
+     * @param G digraph to snapshot
+     */
+    public ImmutableDigraph(Digraph G) {
+        int V = G.V();
+        this.offsets = new int[V + 1];
+        this.targets = new int[G.E()];
+        int e = 0;
+        for (int v = 0; v < V; v++) {
+            this.offsets[v] = e;
+            for (int w : G.adj(v)) this.targets[e++] = w;
+        }
+        this.offsets[V] = e;
+    }
+
+
+    /* Adopt finished CSR arrays. */
+    private ImmutableDigraph(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+
+    /* Adopt CSR arrays built elsewhere in this package; caller gives up ownership. */
+    static ImmutableDigraph fromCSR(int[] offsets, int[] targets) {
+        return new ImmutableDigraph(offsets, targets);
+    }
+
+
+    /**
+     * Get the number of vertices.
+     *
+     * @return number of vertices
+     */
+    public int V() {return this.offsets.length - 1;}
+
+
+    /**
+     * Get the number of edges.
+     *
+     * @return number of edges
+     */
+    public int E() {return this.targets.length;}
+
+
+    /**
+     * Get the number of edges leaving a vertex.
+     *
+     * @param v query vertex
+     * @return number of edges leaving v
+     */
+    public int outdegree(int v) {return this.offsets[v + 1] - this.offsets[v];}
+
+
+    /**
+     * Iterate over the vertices adjacent from a vertex.
+     *
+     * @param v query vertex
+     * @return iterable over heads of edges leaving v
+     */
+    public Iterable<Integer> adj(int v) {
+        List<Integer> heads = new ArrayList<Integer>(outdegree(v));
+        for (int e = this.offsets[v]; e < this.offsets[v + 1]; e++) heads.add(this.targets[e]);
+        return heads;
+    }
+
+
+    /**
+     * Build the graph with every edge reversed (a counting sort by head
+     * vertex), e.g. hyponym edges from hypernym edges.
+     *
+     * @return new graph with an edge w-&gt;v for each edge v-&gt;w of this one
+     */
+    public ImmutableDigraph reverse() {
+        int V = V();
+        int[] reversedOffsets = new int[V + 1];
+        for (int e = 0; e < E(); e++) reversedOffsets[this.targets[e] + 1]++;
+        for (int v = 0; v < V; v++) reversedOffsets[v + 1] += reversedOffsets[v];
+        int[] next = Arrays.copyOf(reversedOffsets, V);
+        int[] reversedTargets = new int[E()];
+        for (int v = 0; v < V; v++) {
+            for (int e = this.offsets[v]; e < this.offsets[v + 1]; e++) {
+                reversedTargets[next[this.targets[e]]++] = v;
+            }
+        }
+        return new ImmutableDigraph(reversedOffsets, reversedTargets);
+    }
+
+
+    /*
+     * Copy this graph with V vertices (at least as many as now) and the
+     * given edges appended; each vertex keeps its existing edges first,
+     * then the new ones in the order given. Caller validates the edges.
+     */
+    ImmutableDigraph withEdges(int V, int[] tails, int[] heads, int count) {
+        int oldV = V();
+        int[] extendedOffsets = new int[V + 1];
+        for (int v = 0; v < oldV; v++) extendedOffsets[v + 1] = outdegree(v);
+        for (int e = 0; e < count; e++) extendedOffsets[tails[e] + 1]++;
+        for (int v = 0; v < V; v++) extendedOffsets[v + 1] += extendedOffsets[v];
+        int[] next = Arrays.copyOf(extendedOffsets, V);
+        int[] extendedTargets = new int[E() + count];
+        for (int v = 0; v < oldV; v++) {
+            int degree = outdegree(v);
+            System.arraycopy(this.targets, this.offsets[v], extendedTargets, next[v], degree);
+            next[v] += degree;
+        }
+        for (int e = 0; e < count; e++) extendedTargets[next[tails[e]]++] = heads[e];
+        return new ImmutableDigraph(extendedOffsets, extendedTargets);
+    }
+
+
+    /*
+     * Copy this graph with each vertex v renumbered positions[v] (a
+     * permutation of the vertices), keeping each vertex's edges in order.
+     */
+    ImmutableDigraph permuted(int[] positions) {
+        int V = V();
+        int[] permutedOffsets = new int[V + 1];
+        for (int v = 0; v < V; v++) permutedOffsets[positions[v] + 1] = outdegree(v);
+        for (int v = 0; v < V; v++) permutedOffsets[v + 1] += permutedOffsets[v];
+        int[] permutedTargets = new int[E()];
+        for (int v = 0; v < V; v++) {
+            int next = permutedOffsets[positions[v]];
+            for (int e = this.offsets[v]; e < this.offsets[v + 1]; e++) {
+                permutedTargets[next++] = positions[this.targets[e]];
+            }
+        }
+        return new ImmutableDigraph(permutedOffsets, permutedTargets);
+    }
+
+
+    /**
+     * Copy this graph into a mutable algs4 Digraph, for code that needs one.
+     *
+     * @return new Digraph with the same vertices and edges
+     */
+    public Digraph toDigraph() {
+        Digraph G = new Digraph(V());
+        // Digraph prepends to adjacency lists, so add in reverse to keep order.
+        for (int v = 0; v < V(); v++) {
+            for (int e = this.offsets[v + 1] - 1; e >= this.offsets[v]; e--) {
+                G.addEdge(v, this.targets[e]);
+            }
+        }
+        return G;
+    }
+
+
+    /* Shared CSR arrays for search engines in this package; callers mustn't modify. */
+    int[] offsets() {return this.offsets;}
+    int[] targets() {return this.targets;}
+
+
+    /* Same layout as algs4 Digraph's string representation. */
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(V()).append(" vertices, ").append(E()).append(" edges ").append(NEWLINE);
+        for (int v = 0; v < V(); v++) {
+            s.append(v).append(": ");
+            for (int e = this.offsets[v]; e < this.offsets[v + 1]; e++) {
+                s.append(this.targets[e]).append(' ');
+            }
+            s.append(NEWLINE);
+        }
+        return s.toString();
+    }
+
+
+    /**
+     * Accumulate edges in flat primitive arrays, then lay them out
+     * in CSR form. Each vertex's edges keep the order they were added.
+     */
+    public static final class Builder {
+
+        private final int V;
+        private int[] tails = new int[16];
+        private int[] heads = new int[16];
+        private int E;
+
+        /**
+         * Start an edgeless graph with the given number of vertices.
+         *
+         * @param V number of vertices
+         * @throws IllegalArgumentException if V is negative
+         */
+        public Builder(int V) {
+            if (V < 0) throw new IllegalArgumentException("Number of vertices must be nonnegative");
+            this.V = V;
+        }
+
+        /**
+         * Add the directed edge v-&gt;w.
+         *
+         * @param v tail vertex
+         * @param w head vertex
+         * @return this builder
+         * @throws IllegalArgumentException unless both vertices are in range
+         */
+        public Builder addEdge(int v, int w) {
+            validate(v);
+            validate(w);
+            if (this.E == this.tails.length) {
+                this.tails = Arrays.copyOf(this.tails, 2 * this.E);
+                this.heads = Arrays.copyOf(this.heads, 2 * this.E);
+            }
+            this.tails[this.E] = v;
+            this.heads[this.E] = w;
+            this.E++;
+            return this;
+        }
+
+        /**
+         * Lay the edges out in CSR form (a counting sort by tail vertex).
+         *
+         * @return immutable graph with the vertices and edges added so far
+         */
+        public ImmutableDigraph build() {
+            int[] offsets = new int[this.V + 1];
+            for (int e = 0; e < this.E; e++) offsets[this.tails[e] + 1]++;
+            for (int v = 0; v < this.V; v++) offsets[v + 1] += offsets[v];
+            int[] next = Arrays.copyOf(offsets, this.V);
+            int[] targets = new int[this.E];
+            for (int e = 0; e < this.E; e++) targets[next[this.tails[e]]++] = this.heads[e];
+            return new ImmutableDigraph(offsets, targets);
+        }
+
+        private void validate(int v) {
+            if (v < 0 || v >= this.V) {
+                throw new IllegalArgumentException(
+                        String.format("vertex %d is not between 0 and %d", v, this.V - 1));
+            }
+        }
+
+    }
+
+
+}
@@ -0,0 +1,51 @@
+/**
+ * A WordNet that changes over time. Readers take the current version
+ * with {@link #current()}; writers apply patches, each of which makes a
+ * new version (see {@link WordNet#apply(WordNet.Patch)}). Versions are
+ * immutable, so readers never lock, and a query that's already running
+ * keeps the version it started on while later readers see the new one.
+ * Writers are serialized, so concurrent patches are never lost.
+ *
+ * @author Vince Reuter
+ */
+public final class LiveWordNet {
+
+
+    private volatile WordNet current;
+
+
+    /**
+     * Start from the given version.
+     *
+     * @param initial first version
+     */
+    public LiveWordNet(WordNet initial) {
+        if (initial == null) throw new NullPointerException("Null WordNet");
+        this.current = initial;
+    }
+
+
+    /**
+     * Get the latest version, to query for as long as needed.
+     *
+     * @return latest WordNet
+     */
+    public WordNet current() {return this.current;}
+
+
+    /**
+     * Apply a patch to the latest version and publish the result.
+     * If the patch is rejected, the latest version stays current.
+     *
+     * @param patch synsets and edges to add
+     * @return new latest WordNet
+     * @throws IllegalArgumentException if the patch is invalid for the latest version
+     */
+    public synchronized WordNet apply(WordNet.Patch patch) {
+        WordNet next = this.current.apply(patch);
+        this.current = next;
+        return next;
+    }
+
+
+}
@@ -0,0 +1,174 @@
+import java.util.Arrays;
+
+
+/**
+ * Enumerates synsets in increasing SAP distance from a group of source
+ * synsets. Every common ancestor path from a source to a synset y climbs
+ * to some hypernym x of the sources and then descends from x to y, so the
+ * search is seeded with the sources' ancestors at their upward distances
+ * and then walks down the hyponym (reversed hypernym) graph, as a BFS in
+ * which each seed joins at its own level. Synsets come out one at a time,
+ * nearest first, and hyponyms are pulled one edge at a time from the
+ * earliest settled synset that has some left, so even a synset with
+ * hundreds of hyponyms costs only as many edges as the caller consumes.
+ * A caller that wants the k nearest stops after about as many synsets as
+ * it needs; the work depends on k and on the density of the
+ * neighbourhood, not on the size of the graph.
+ *
+ * As in PairedShortCircuitBFS, marks are stamped with a per-search epoch
+ * so the workspace is reused without being cleared. An instance is not
+ * safe for use by concurrent threads.
+ *
+ * @author Vince Reuter
+ */
+final class NearestSynsetSearch {
+
+
+    // CSR adjacency of the hyponym graph
+    private final int[] offsets;
+    private final int[] targets;
+
+    /* Scratch workspace; the queue holds settled synsets, whose hyponyms are next */
+    private final int[] mark;
+    private final int[] distTo;
+    private final int[] queue;
+    private int head;
+    private int tail;
+    private int edge;
+    private int epoch;
+
+    // Seeds (the sources' ancestors) as distance << 32 | vertex, ascending
+    private long[] seeds = new long[64];
+    private int seedCount;
+    private int nextSeed;
+
+    // Most recently settled synset; -1 if none
+    private int settled = -1;
+
+    // Work done by the current search, counted only when QueryStats is recording
+    private long dequeued;
+    private long relaxed;
+
+
+    /**
+     * Allocate the search workspace over a hyponym graph.
+     *
+     * @param hyponyms reverse of the hypernym graph
+     */
+    NearestSynsetSearch(ImmutableDigraph hyponyms) {
+        int V = hyponyms.V();
+        this.offsets = hyponyms.offsets();
+        this.targets = hyponyms.targets();
+        this.mark = new int[V];
+        this.distTo = new int[V];
+        this.queue = new int[V];
+    }
+
+
+    /**
+     * Start a new search from the given ancestors of the sources.
+     *
+     * @param ancestors ancestors of the source synsets, with their distances
+     */
+    void start(AncestorMap ancestors) {
+        if (++this.epoch == 0) {
+            // Wrapped around: stale marks could now look current.
+            Arrays.fill(this.mark, 0);
+            this.epoch = 1;
+        }
+        int n = ancestors.size();
+        if (n > this.seeds.length) this.seeds = new long[Math.max(n, 2 * this.seeds.length)];
+        for (int i = 0; i < n; i++) {
+            int v = ancestors.vertex(i);
+            this.mark[v] = this.epoch;
+            this.distTo[v] = ancestors.distance(i);
+            this.seeds[i] = ((long) this.distTo[v] << 32) | v;
+        }
+        Arrays.sort(this.seeds, 0, n);
+        this.seedCount = n;
+        this.nextSeed = 0;
+        this.head = 0;
+        this.tail = 0;
+        this.settled = -1;
+        this.dequeued = 0;
+        this.relaxed = 0;
+    }
+
+
+    /**
+     * Settle the next nearest synset. Ties are broken deterministically:
+     * ancestors before descendants, then in search order.
+     *
+     * @return next synset, in nondecreasing distance order; -1 once every
+     *         synset reachable from the sources has been returned
+     */
+    int next() {
+
+        /* Nearest hyponym candidate: next edge of the earliest settled synset with edges left. */
+        int child = -1;
+        int childDist = Integer.MAX_VALUE;
+        while (this.head < this.tail) {
+            int x = this.queue[this.head];
+            if (this.edge == this.offsets[x + 1]) {
+                if (++this.head < this.tail) this.edge = this.offsets[this.queue[this.head]];
+                continue;
+            }
+            int y = this.targets[this.edge];
+            int d = this.distTo[x] + 1;
+            if (QueryStats.ENABLED) this.relaxed++;
+            // Skip synsets settled already, and seeds that will settle no farther away.
+            if (this.mark[y] == this.epoch && this.distTo[y] <= d) {
+                this.edge++;
+                continue;
+            }
+            child = y;
+            childDist = d;
+            break;
+        }
+
+        /* Drop seeds that were reached nearer going down. */
+        while (this.nextSeed < this.seedCount
+                && this.distTo[(int) this.seeds[this.nextSeed]] < (int) (this.seeds[this.nextSeed] >>> 32)) {
+            this.nextSeed++;
+        }
+
+        /* Settle the nearer of the next seed and the candidate, seed on a tie. */
+        int v;
+        if (this.nextSeed < this.seedCount && (int) (this.seeds[this.nextSeed] >>> 32) <= childDist) {
+            v = (int) this.seeds[this.nextSeed++];
+        } else if (child != -1) {
+            v = child;
+            this.edge++;
+            this.mark[v] = this.epoch;
+            this.distTo[v] = childDist;
+        } else {
+            this.settled = -1;
+            return -1;
+        }
+        if (this.head == this.tail) this.edge = this.offsets[v];
+        this.queue[this.tail++] = v;
+        this.settled = v;
+        if (QueryStats.ENABLED) this.dequeued++;
+        return v;
+    }
+
+
+    /**
+     * End the search, reporting its work if QueryStats is recording.
+     *
+     * @param stoppedEarly whether the caller stopped before the search ran out
+     */
+    void finish(boolean stoppedEarly) {
+        if (QueryStats.ENABLED) QueryStats.search(this.dequeued, this.relaxed, stoppedEarly);
+    }
+
+
+    /**
+     * Get the distance of the synset most recently returned by {@link #next()}.
+     *
+     * @return SAP distance from the sources to that synset
+     */
+    int distance() {return this.distTo[this.settled];}
+
+
+}
@@ -0,0 +1,399 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * WordNet's lexicon index: which synsets each noun belongs to, and
+ * which nouns make up each synset. Nouns are interned as int IDs (their
+ * positions in sorted order), and both directions are stored in
+ * compressed sparse row (CSR) form, as in ImmutableDigraph: the synsets
+ * of noun n are synsetIds[synsetOffsets[n]] through
+ * synsetIds[synsetOffsets[n + 1] - 1], and likewise for the nouns of a
+ * synset. A noun is found through an open-addressing table of IDs keyed
+ * by the noun's (cached) String hash. That's a handful of flat arrays
+ * in place of a boxed set per noun and a hash set per synset.
+ *
+ * An index loaded from a snapshot leaves its nouns where they are
+ * (see {@link SortedNouns}): they're found by binary search over the
+ * stored, sorted nouns and decoded one at a time, so loading builds no
+ * strings and no hash table.
+ *
+ * @author Vince Reuter
+ */
+final class NounIndex {
+
+
+    // Nouns by ID, in sorted order; null if they're stored outside the heap
+    private final String[] nouns;
+
+    // Stored nouns, searched where they are; null if they're in the array above
+    private final SortedNouns stored;
+
+    // Synset IDs of each noun (ascending), and noun IDs of each synset (file order)
+    private final int[] synsetOffsets;
+    private final int[] synsetIds;
+    private final int[] nounOffsets;
+    private final int[] nounIds;
+
+    // Open addressing over noun IDs: slot holds ID + 1, or 0 if empty; null if nouns are stored
+    private final int[] slots;
+    private final int shift;
+
+
+    /* Adopt finished arrays; caller gives up ownership. */
+    NounIndex(String[] nouns, int[] synsetOffsets, int[] synsetIds,
+              int[] nounOffsets, int[] nounIds) {
+        this(nouns, null, synsetOffsets, synsetIds, nounOffsets, nounIds);
+    }
+
+
+    /* Adopt finished arrays, with nouns that stay in storage; caller gives up ownership. */
+    NounIndex(SortedNouns stored, int[] synsetOffsets, int[] synsetIds,
+              int[] nounOffsets, int[] nounIds) {
+        this(null, stored, synsetOffsets, synsetIds, nounOffsets, nounIds);
+    }
+
+
+    private NounIndex(String[] nouns, SortedNouns stored, int[] synsetOffsets, int[] synsetIds,
+                      int[] nounOffsets, int[] nounIds) {
+        this.nouns = nouns;
+        this.stored = stored;
+        this.synsetOffsets = synsetOffsets;
+        this.synsetIds = synsetIds;
+        this.nounOffsets = nounOffsets;
+        this.nounIds = nounIds;
+        if (nouns == null) {
+            this.slots = null;
+            this.shift = 0;
+            return;
+        }
+        this.slots = new int[Integer.highestOneBit(Math.max(1, 2 * nouns.length - 1)) << 1];
+        this.shift = 32 - Integer.numberOfTrailingZeros(this.slots.length);
+        int mask = this.slots.length - 1;
+        for (int id = 0; id < nouns.length; id++) {
+            int slot = home(nouns[id]);
+            while (this.slots[slot] != 0) slot = (slot + 1) & mask;
+            this.slots[slot] = id + 1;
+        }
+    }
+
+
+    /** Number of distinct nouns. */
+    int size() {return this.nouns != null ? this.nouns.length : this.stored.size();}
+
+
+    /** Number of synsets. */
+    int V() {return this.nounOffsets.length - 1;}
+
+
+    /**
+     * Look up a noun's ID.
+     *
+     * @param noun query word
+     * @return noun's ID; -1 if unknown (or null)
+     */
+    int id(String noun) {
+        if (noun == null) return -1;
+        if (this.nouns == null) return this.stored.id(noun);
+        int mask = this.slots.length - 1;
+        for (int slot = home(noun); this.slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = this.slots[slot] - 1;
+            if (this.nouns[id].equals(noun)) return id;
+        }
+        return -1;
+    }
+
+
+    /** Noun with the given ID. */
+    String noun(int id) {return this.nouns != null ? this.nouns[id] : this.stored.noun(id);}
+
+
+    /** Read-only view of every noun, in ID (sorted) order. */
+    List<String> nouns() {
+        if (this.nouns != null) return Collections.unmodifiableList(Arrays.asList(this.nouns));
+        return new AbstractList<String>() {
+            public int size() {return NounIndex.this.stored.size();}
+            public String get(int id) {
+                if (id < 0 || id >= size()) throw new IndexOutOfBoundsException("Index " + id);
+                return NounIndex.this.stored.noun(id);
+            }
+        };
+    }
+
+
+    /**
+     * Get the synsets that a noun belongs to.
+     *
+     * @param id noun ID
+     * @return read-only view of the noun's synset IDs, ascending
+     */
+    List<Integer> synsets(int id) {
+        return slice(this.synsetIds, this.synsetOffsets[id], this.synsetOffsets[id + 1]);
+    }
+
+
+    /**
+     * Get the nouns that make up a synset.
+     *
+     * @param synset synset ID
+     * @return read-only view of the synset's nouns, in file order
+     */
+    List<String> words(int synset) {
+        final int first = this.nounOffsets[synset];
+        final int last = this.nounOffsets[synset + 1];
+        return new AbstractList<String>() {
+            public int size() {return last - first;}
+            public String get(int i) {
+                if (i < 0 || i >= last - first) throw new IndexOutOfBoundsException("Index " + i);
+                return noun(NounIndex.this.nounIds[first + i]);
+            }
+        };
+    }
+
+
+    /**
+     * Copy this index with more synsets and memberships. Nouns new to the
+     * index are merged into the sorted ones, so existing nouns may get new
+     * IDs; nothing is rehashed or re-sorted but the new nouns. Stored nouns
+     * are decoded into the copy.
+     *
+     * @param V number of synsets, at least as many as now
+     * @param synsets synset of each new membership, between 0 and V - 1
+     * @param nouns noun of each new membership
+     * @param count number of new memberships
+     * @return extended index; this one is unchanged
+     */
+    NounIndex with(int V, int[] synsets, String[] nouns, int count) {
+
+        /* Sort the nouns this index lacks, then merge them into its own. */
+        String[] fresh = new String[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) if (id(nouns[i]) == -1) fresh[n++] = nouns[i];
+        Arrays.sort(fresh, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || !fresh[distinct - 1].equals(fresh[i])) fresh[distinct++] = fresh[i];
+        }
+        int N = size();
+        String[] merged = new String[N + distinct];
+        int[] renumbered = new int[N];
+        String next = N == 0 ? null : noun(0);
+        for (int i = 0, j = 0, k = 0; k < merged.length; k++) {
+            if (j == distinct || (i < N && next.compareTo(fresh[j]) < 0)) {
+                renumbered[i] = k;
+                merged[k] = next;
+                next = ++i < N ? noun(i) : null;
+            } else {
+                merged[k] = fresh[j++];
+            }
+        }
+
+        /* Every membership with final IDs, existing ones first (in file order), then regroup. */
+        int M = this.nounIds.length + count;
+        int[] synsetOf = new int[M];
+        int[] nounOf = new int[M];
+        int m = 0;
+        for (int synset = 0; synset < V(); synset++) {
+            for (int e = this.nounOffsets[synset]; e < this.nounOffsets[synset + 1]; e++, m++) {
+                synsetOf[m] = synset;
+                nounOf[m] = renumbered[this.nounIds[e]];
+            }
+        }
+        for (int i = 0; i < count; i++, m++) {
+            synsetOf[m] = synsets[i];
+            nounOf[m] = Arrays.binarySearch(merged, nouns[i]);
+        }
+        int[][] bySynset = Builder.group(V, synsetOf, nounOf, M, false);
+        int[][] byNoun = Builder.group(merged.length, nounOf, synsetOf, M, true);
+        return new NounIndex(merged, byNoun[0], byNoun[1], bySynset[0], bySynset[1]);
+    }
+
+
+    /**
+     * Copy this index with each synset s renumbered positions[s] (a
+     * permutation of the synsets). Nouns keep their IDs.
+     *
+     * @param positions new ID of each synset
+     * @return renumbered index; this one is unchanged
+     */
+    NounIndex permuted(int[] positions) {
+        int V = V();
+        int[] permutedSynsetIds = new int[this.synsetIds.length];
+        for (int e = 0; e < permutedSynsetIds.length; e++) permutedSynsetIds[e] = positions[this.synsetIds[e]];
+        for (int id = 0; id < size(); id++) {
+            Arrays.sort(permutedSynsetIds, this.synsetOffsets[id], this.synsetOffsets[id + 1]);
+        }
+        int[] permutedNounOffsets = new int[V + 1];
+        for (int s = 0; s < V; s++) permutedNounOffsets[positions[s] + 1] = this.nounOffsets[s + 1] - this.nounOffsets[s];
+        for (int s = 0; s < V; s++) permutedNounOffsets[s + 1] += permutedNounOffsets[s];
+        int[] permutedNounIds = new int[this.nounIds.length];
+        for (int s = 0; s < V; s++) {
+            System.arraycopy(this.nounIds, this.nounOffsets[s], permutedNounIds, permutedNounOffsets[positions[s]],
+                             this.nounOffsets[s + 1] - this.nounOffsets[s]);
+        }
+        return new NounIndex(this.nouns, this.stored, this.synsetOffsets, permutedSynsetIds,
+                             permutedNounOffsets, permutedNounIds);
+    }
+
+
+    /* CSR arrays, for the snapshot writer; never modified. */
+    int[] synsetOffsets() {return this.synsetOffsets;}
+    int[] synsetIds() {return this.synsetIds;}
+    int[] nounOffsets() {return this.nounOffsets;}
+    int[] nounIds() {return this.nounIds;}
+
+
+    /*
+     * Home slot of a noun: the top bits of its String hash times the golden
+     * ratio. Hashes of short similar nouns crowd into narrow ranges, and
+     * linear probing would turn those into long runs if the low bits were
+     * used directly.
+     */
+    private int home(String noun) {
+        return (noun.hashCode() * 0x9E3779B9) >>> this.shift;
+    }
+
+
+    private static List<Integer> slice(final int[] values, final int first, final int last) {
+        return new AbstractList<Integer>() {
+            public int size() {return last - first;}
+            public Integer get(int i) {
+                if (i < 0 || i >= last - first) throw new IndexOutOfBoundsException("Index " + i);
+                return values[first + i];
+            }
+        };
+    }
+
+
+    /**
+     * Nouns kept in storage, such as a snapshot's mapping, in the order
+     * of their IDs (sorted as Strings are), and searched where they are.
+     */
+    interface SortedNouns {
+
+        /** Number of nouns. */
+        int size();
+
+        /** Noun with the given ID. */
+        String noun(int id);
+
+        /** ID of a (non-null) noun; -1 if it isn't there. */
+        int id(String noun);
+
+    }
+
+
+    /**
+     * Accumulates (synset, noun) memberships, then lays them out as a
+     * NounIndex. Repeated memberships are kept once.
+     */
+    static final class Builder {
+
+        private final int V;
+        private int[] synsets = new int[64];
+        private String[] nouns = new String[64];
+        private int M;
+
+        /**
+         * Start an index over the given number of synsets.
+         *
+         * @param V number of synsets
+         * @throws IllegalArgumentException if V is negative
+         */
+        Builder(int V) {
+            if (V < 0) throw new IllegalArgumentException("Number of synsets must be nonnegative");
+            this.V = V;
+        }
+
+        /**
+         * Record that a noun belongs to a synset.
+         *
+         * @param synset synset ID
+         * @param noun member noun
+         * @return this builder
+         * @throws IllegalArgumentException if the synset is out of range
+         */
+        Builder add(int synset, String noun) {
+            if (synset < 0 || synset >= this.V) {
+                throw new IllegalArgumentException(
+                        String.format("synset %d is not between 0 and %d", synset, this.V - 1));
+            }
+            if (this.M == this.synsets.length) {
+                this.synsets = Arrays.copyOf(this.synsets, 2 * this.M);
+                this.nouns = Arrays.copyOf(this.nouns, 2 * this.M);
+            }
+            this.synsets[this.M] = synset;
+            this.nouns[this.M++] = noun;
+            return this;
+        }
+
+        /**
+         * Intern the nouns in sorted order and group memberships both ways.
+         *
+         * @return index of the memberships added so far
+         */
+        NounIndex build() {
+
+            /* Provisional IDs in order of appearance, then final IDs in sorted order. */
+            Map<String, Integer> provisional = new HashMap<String, Integer>(2 * this.M);
+            int[] nounOf = new int[this.M];
+            for (int i = 0; i < this.M; i++) {
+                Integer id = provisional.get(this.nouns[i]);
+                if (id == null) {
+                    id = provisional.size();
+                    provisional.put(this.nouns[i], id);
+                }
+                nounOf[i] = id;
+            }
+            String[] sorted = provisional.keySet().toArray(new String[provisional.size()]);
+            Arrays.sort(sorted);
+            int[] finalId = new int[sorted.length];
+            for (int id = 0; id < sorted.length; id++) finalId[provisional.get(sorted[id])] = id;
+            for (int i = 0; i < this.M; i++) nounOf[i] = finalId[nounOf[i]];
+
+            int[][] bySynset = group(this.V, this.synsets, nounOf, this.M, false);
+            int[][] byNoun = group(sorted.length, nounOf, this.synsets, this.M, true);
+            return new NounIndex(sorted, byNoun[0], byNoun[1], bySynset[0], bySynset[1]);
+        }
+
+        /*
+         * Counting sort of values by key into CSR {offsets, values}, keeping
+         * input order within a row (or sorting it), with duplicates dropped.
+         */
+        private static int[][] group(int rows, int[] keys, int[] values, int count, boolean sortRows) {
+            int[] offsets = new int[rows + 1];
+            for (int i = 0; i < count; i++) offsets[keys[i] + 1]++;
+            for (int r = 0; r < rows; r++) offsets[r + 1] += offsets[r];
+            int[] next = Arrays.copyOf(offsets, rows);
+            int[] grouped = new int[count];
+            for (int i = 0; i < count; i++) grouped[next[keys[i]]++] = values[i];
+
+            /* Compact each row in place, shifting it down over dropped duplicates. */
+            int kept = 0;
+            for (int r = 0; r < rows; r++) {
+                int start = offsets[r];
+                int end = offsets[r + 1];
+                if (sortRows) Arrays.sort(grouped, start, end);
+                offsets[r] = kept;
+                for (int i = start; i < end; i++) {
+                    if (!contains(grouped, offsets[r], kept, grouped[i])) grouped[kept++] = grouped[i];
+                }
+            }
+            offsets[rows] = kept;
+            return new int[][] {offsets, Arrays.copyOf(grouped, kept)};
+        }
+
+        /* Rows are short (a synset's nouns, a noun's synsets), so a scan is fine. */
+        private static boolean contains(int[] values, int from, int to, int value) {
+            for (int i = to - 1; i >= from; i--) if (values[i] == value) return true;
+            return false;
+        }
+
+    }
+
+
+}
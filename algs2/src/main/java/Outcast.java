@@ -1,3 +1,17 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
 import edu.princeton.cs.algs4.In;
 import edu.princeton.cs.algs4.StdOut;
 
@@ -7,6 +21,7 @@ import edu.princeton.cs.algs4.StdOut;
  * Dissimilarity is defined by minimmal common ancestral
  * distance within WordNet, with a common ancestor between
  * a pair of words being a hypernym shared by the word pair.
+ * Like the WordNet it reads, an instance may be shared by threads.
  *
  * @author Vince Reuter
  */
@@ -17,6 +32,11 @@ public final class Outcast {
     private static final int HYPERNYM_FILEPATH_INDEX = 1;
     private static final int OUTCAST_FILEPATHS_INDEX_START = 2;
 
+    /* Batch mode: flag, stdin marker, and groups read per parallel block */
+    private static final String BATCH_FLAG = "--batch";
+    private static final String STDIN_PATH = "-";
+    private static final int BATCH_BLOCK_SIZE = 1 << 13;
+
     private final WordNet wordnet;
 
 
@@ -42,10 +62,16 @@ public final class Outcast {
 
         int[] distances = new int[nouns.length];
 
+        /* One search per word; pairs are then merged without traversal. */
+        AncestorMap[] ancestors = new AncestorMap[nouns.length];
+        for (int i = 0; i < nouns.length; i++) {
+            ancestors[i] = this.wordnet.ancestors(nouns[i]);
+        }
+
         /* Iterate over word pairs to get total distance for each word. */
         for (int i = 0; i < nouns.length - 1; i++) {
             for (int j = i + 1; j < nouns.length; j++) {
-                int d = this.wordnet.distance(nouns[i], nouns[j]);
+                int d = AncestorMap.length(ancestors[i], ancestors[j]);
                 distances[i] += d;
                 distances[j] += d;
             }
@@ -65,11 +91,85 @@ public final class Outcast {
     }
 
 
-    /* Crude testing, taken from assignment specification */
+    /**
+     * Find the outcast of each of many groups. Groups are evaluated in
+     * parallel on the common fork-join pool, all against this Outcast's
+     * WordNet, which is only ever read.
+     *
+     * @param groups word groups, each as for {@link #outcast(String[])}
+     * @return outcast of each group, in the same order as the groups
+     */
+    public List<String> outcasts(List<String[]> groups) {
+        String[] results = new String[groups.size()];
+        IntStream.range(0, results.length).parallel()
+                 .forEach(i -> results[i] = outcast(groups.get(i)));
+        return Arrays.asList(results);
+    }
+
+
+    /**
+     * Find the outcast of each group in a stream of groups, one group of
+     * whitespace-separated words per line, writing one outcast per line
+     * in input order. Lines are read in blocks, and each block's groups
+     * are evaluated in parallel, so memory stays bounded.
+     *
+     * @param in source of groups, one per line
+     * @param out destination of outcasts, one per line
+     * @throws UncheckedIOException if reading or writing fails
+     */
+    public void outcasts(BufferedReader in, PrintWriter out) {
+        try {
+            List<String[]> block = new ArrayList<String[]>(BATCH_BLOCK_SIZE);
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty()) continue;
+                block.add(trimmed.split("\\s+"));
+                if (block.size() == BATCH_BLOCK_SIZE) {
+                    for (String result : outcasts(block)) out.println(result);
+                    block.clear();
+                }
+            }
+            for (String result : outcasts(block)) out.println(result);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /*
+     * Evaluate every group file (or, given "-", every line of standard
+     * input) in parallel, printing results in the order given.
+     */
+    private void batch(String[] paths) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+        if (paths.length == 1 && STDIN_PATH.equals(paths[0])) {
+            outcasts(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16), out);
+            return;
+        }
+        List<String[]> groups = Arrays.stream(paths).parallel()
+                                      .map(path -> new In(path).readAllStrings())
+                                      .collect(Collectors.toList());
+        List<String> results = outcasts(groups);
+        for (int i = 0; i < paths.length; i++) out.println(paths[i] + ": " + results.get(i));
+        out.flush();
+    }
+
+
+    /*
+     * Crude testing, taken from assignment specification. With --batch
+     * after the WordNet files, the groups are evaluated in parallel.
+     */
     public static void main(String[] args) {
         WordNet wordnet = new WordNet(args[SYNSET_FILEPATH_INDEX],
                                       args[HYPERNYM_FILEPATH_INDEX]);
         Outcast outcast = new Outcast(wordnet);
+        if (args.length > OUTCAST_FILEPATHS_INDEX_START
+                && BATCH_FLAG.equals(args[OUTCAST_FILEPATHS_INDEX_START])) {
+            outcast.batch(Arrays.copyOfRange(args, OUTCAST_FILEPATHS_INDEX_START + 1, args.length));
+            return;
+        }
         for (int t = OUTCAST_FILEPATHS_INDEX_START; t < args.length; t++) {
             In in = new In(args[t]);
             String[] nouns = in.readAllStrings();
@@ -1,43 +1,363 @@
-import edu.princeton.cs.algs4.Digraph;
+import java.util.Arrays;
 
 /**
  * Implementation of BFS tailored to finding shortest
  * ancestral path (SAP) between a pair of digraph vertices.
+ * The two searches are run in lockstep, one level at a time,
+ * alternating between the side with the shallower frontier.
+ * The search stops as soon as no vertex left undiscovered by
+ * either side could yield a shorter ancestral path than the
+ * best one found so far, so the work done depends on the
+ * neighborhood of the query vertices rather than on the size
+ * of the digraph.
+ *
+ * All search state lives in a scratch workspace of primitive
+ * arrays that's allocated once and reused by every query. Each
+ * mark is stamped with the epoch of the query that set it, so
+ * starting a query just bumps the epoch: vertices the previous
+ * query touched become stale without being visited, and only
+ * the vertices a query actually reaches are ever written. Each
+ * side's queue doubles as the log of vertices it touched. Once
+ * warm, a single-vertex search allocates nothing.
+ *
+ * An instance is not safe for use by concurrent threads.
  *
  * @author Vince Reuter
- * @version 0.0
+ * @version 0.3
  */
 public class PairedShortCircuitBFS {
 
 
-    public final class Paths {
+    // Sentinel for length and ancestor when there's no common ancestor
+    private static final int NONE = -1;
+
+    // Indices of the two query sides within the workspace arrays
+    private static final int A = 0;
+    private static final int B = 1;
+
+    // CSR adjacency shared with the (immutable) digraph
+    private final int[] offsets;
+    private final int[] targets;
+
+    /* Scratch workspace, one row per query side */
+    private final int[][] mark;
+    private final int[][] distTo;
+    private final int[][] edgeTo;
+    private final int[][] queue;
+    private final int[] head = new int[2];
+    private final int[] tail = new int[2];
+    private final int[] depth = new int[2];
+    private int epoch;
+
+    /* Result of the most recent search */
+    private int length = NONE;
+    private int ancestor = NONE;
+    private boolean timedOut;
+
+    /* Work done by the current search, counted only when QueryStats is recording */
+    private long dequeued;
+    private long relaxed;
+
+
+    /**
+     * Allocate the reusable search workspace for the given digraph.
+     * The digraph's adjacency is shared, not copied.
+     *
+     * @param G digraph within which to search
+     */
+    public PairedShortCircuitBFS(ImmutableDigraph G) {
+        int V = G.V();
+        this.offsets = G.offsets();
+        this.targets = G.targets();
+        this.mark = new int[2][V];
+        this.distTo = new int[2][V];
+        this.edgeTo = new int[2][V];
+        this.queue = new int[2][V];
+    }
+
+
+    /**
+     * Get the number of vertices in the searched digraph.
+     *
+     * @return number of vertices in the searched digraph
+     */
+    public int V() {return this.offsets.length - 1;}
+
+
+    /**
+     * Find length of shortest ancestral path between a pair of vertices.
+     *
+     * @param v one query vertex
+     * @param w other query vertex
+     * @return length of SAP between v and w; -1 if nonexistent
+     */
+    public int search(int v, int w) {
+        begin();
+        seed(A, v);
+        seed(B, w);
+        return run(Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
 
-        private final Iterable<Integer> fromA;
-        private final Iterable<Integer> fromB;
-        private final int length;
 
-        public Paths(Iterable<Integer> fromA, Iterable<Integer> fromB) {
-            this.fromA = fromA;
-            this.fromB = fromB;
-            // TODO: set length.
+    /**
+     * Find length of shortest ancestral path between a pair of vertices,
+     * if it's at most maxLength, giving up once no such path can exist
+     * or once the time budget runs out. Time is checked before each
+     * level is expanded, so a search overruns by at most one level.
+     *
+     * @param v one query vertex
+     * @param w other query vertex
+     * @param maxLength longest path length of interest
+     * @param budgetNanos time budget; Long.MAX_VALUE for none
+     * @return length of SAP between v and w; -1 if longer than maxLength
+     *         (or nonexistent), or if the budget ran out (see {@link #timedOut()})
+     */
+    public int search(int v, int w, int maxLength, long budgetNanos) {
+        begin();
+        seed(A, v);
+        seed(B, w);
+        return run(maxLength, budgetNanos);
+    }
+
+
+    /**
+     * Find length of shortest ancestral path between any vertex in
+     * one group and any vertex in another.
+     *
+     * @param sourcesA one group of query vertices
+     * @param sourcesB other group of query vertices
+     * @return length of SAP between the groups; -1 if nonexistent
+     */
+    public int search(Iterable<Integer> sourcesA, Iterable<Integer> sourcesB) {
+        begin();
+        for (int s : sourcesA) seed(A, s);
+        for (int s : sourcesB) seed(B, s);
+        return run(Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+
+    /**
+     * Group version of {@link #search(int, int, int, long)}.
+     *
+     * @param sourcesA one group of query vertices
+     * @param sourcesB other group of query vertices
+     * @param maxLength longest path length of interest
+     * @param budgetNanos time budget; Long.MAX_VALUE for none
+     * @return length of SAP between the groups; -1 if longer than maxLength
+     *         (or nonexistent), or if the budget ran out (see {@link #timedOut()})
+     */
+    public int search(Iterable<Integer> sourcesA, Iterable<Integer> sourcesB, int maxLength, long budgetNanos) {
+        begin();
+        for (int s : sourcesA) seed(A, s);
+        for (int s : sourcesB) seed(B, s);
+        return run(maxLength, budgetNanos);
+    }
+
+
+    /**
+     * Determine whether the most recent search gave up for lack of time,
+     * in which case its result is meaningless.
+     *
+     * @return whether the most recent search ran out of time
+     */
+    public boolean timedOut() {return this.timedOut;}
+
+
+    /**
+     * Get the common ancestor found by the most recent search.
+     *
+     * @return nearest common ancestor from most recent search; -1 if none
+     */
+    public int ancestor() {return this.ancestor;}
+
+
+    /**
+     * Find every ancestor of a vertex, with its distance, by running
+     * one side of the search to exhaustion.
+     *
+     * @param v source vertex
+     * @return ancestors of v (v included) and their distances
+     */
+    public AncestorMap ancestors(int v) {
+        begin();
+        seed(A, v);
+        return sweep();
+    }
+
+
+    /**
+     * Find every ancestor of a group of vertices, with its distance
+     * from the nearest vertex in the group.
+     *
+     * @param sources group of source vertices
+     * @return ancestors of the group (sources included) and their distances
+     */
+    public AncestorMap ancestors(Iterable<Integer> sources) {
+        begin();
+        for (int s : sources) seed(A, s);
+        return sweep();
+    }
+
+
+    /**
+     * Package the most recent search's result. Component paths are only
+     * reconstructed when asked for, since most callers never read them.
+     *
+     * @param withPaths whether to build the vertex sequences as well
+     * @return result of the most recent search
+     */
+    public AncestralPath result(boolean withPaths) {
+        int x = this.ancestor;
+        if (x == NONE) return AncestralPath.NO_PATH;
+        if (!withPaths) {
+            return new AncestralPath(x, this.distTo[A][x], this.distTo[B][x], null, null);
+        }
+        return new AncestralPath(x, this.distTo[A][x], this.distTo[B][x],
+                                 pathTo(A, x), pathTo(B, x));
+    }
+
+
+    /* Start a new query: invalidate all marks by bumping the epoch. */
+    private void begin() {
+        if (this.epoch == Integer.MAX_VALUE) {
+            // Stamps from a full cycle of epochs ago would look current.
+            Arrays.fill(this.mark[A], 0);
+            Arrays.fill(this.mark[B], 0);
+            this.epoch = 0;
+        }
+        this.epoch++;
+        for (int s = A; s <= B; s++) {
+            this.head[s] = 0;
+            this.tail[s] = 0;
+            this.depth[s] = 0;
+        }
+        this.length = NONE;
+        this.ancestor = NONE;
+        this.timedOut = false;
+        this.dequeued = 0;
+        this.relaxed = 0;
+    }
+
+
+    /* Add a source vertex to one side; a vertex in both groups is its own SAP. */
+    private void seed(int s, int v) {
+        if (this.mark[s][v] == this.epoch) return;
+        this.mark[s][v] = this.epoch;
+        this.distTo[s][v] = 0;
+        this.edgeTo[s][v] = v;
+        this.queue[s][this.tail[s]++] = v;
+        if (this.ancestor == NONE && this.mark[1 - s][v] == this.epoch) {
             this.length = 0;
+            this.ancestor = v;
         }
+    }
+
+
+    /*
+     * Expand the shallower side until nothing undiscovered can beat the
+     * best, counting a path longer than maxLength as no better than none,
+     * or until the time budget runs out.
+     */
+    private int run(int maxLength, long budgetNanos) {
+        long start = budgetNanos == Long.MAX_VALUE ? 0L : System.nanoTime();
+        int best = this.length != NONE ? this.length
+                 : maxLength == Integer.MAX_VALUE ? Integer.MAX_VALUE : maxLength + 1;
+        while (true) {
+            int boundA = bound(A);
+            int boundB = bound(B);
+            if (Math.min(boundA, boundB) >= best) break;
+            if (budgetNanos != Long.MAX_VALUE && System.nanoTime() - start >= budgetNanos) {
+                this.timedOut = true;
+                this.length = NONE;
+                this.ancestor = NONE;
+                break;
+            }
+            best = expand(boundA <= boundB ? A : B, best);
+        }
+        if (QueryStats.ENABLED) {
+            QueryStats.search(this.dequeued, this.relaxed,
+                              this.head[A] != this.tail[A] || this.head[B] != this.tail[B]);
+        }
+        return this.length;
+    }
+
+
+    /* Exhaust side A (side B is unseeded, so nothing meets) and collect what it reached. */
+    private AncestorMap sweep() {
+        while (this.head[A] != this.tail[A]) expand(A, Integer.MAX_VALUE);
+        if (QueryStats.ENABLED) QueryStats.search(this.dequeued, this.relaxed, false);
+        int n = this.tail[A];
+        // Sort (vertex, distance) pairs by vertex, packed into longs.
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            int x = this.queue[A][i];
+            packed[i] = ((long) x << 32) | this.distTo[A][x];
+        }
+        Arrays.sort(packed);
+        int[] vertices = new int[n];
+        int[] distances = new int[n];
+        for (int i = 0; i < n; i++) {
+            vertices[i] = (int) (packed[i] >>> 32);
+            distances[i] = (int) packed[i];
+        }
+        return new AncestorMap(vertices, distances);
+    }
 
-        public Iterable<Integer> fromA() {return this.fromA;}
-        public Iterable<Integer> fromB() {return this.fromB;}
-        public int length() {return this.length;}
 
+    /* Smallest distance at which a side could still discover a vertex. */
+    private int bound(int s) {
+        return this.head[s] == this.tail[s] ? Integer.MAX_VALUE : this.depth[s] + 1;
     }
 
 
-    private final Digraph G;
+    /* Discover the next level of one side, recording any shorter SAP found. */
+    private int expand(int s, int best) {
+        int[] mark = this.mark[s];
+        int[] distTo = this.distTo[s];
+        int[] edgeTo = this.edgeTo[s];
+        int[] queue = this.queue[s];
+        int[] otherMark = this.mark[1 - s];
+        int[] otherDistTo = this.distTo[1 - s];
+        int[] offsets = this.offsets;
+        int[] targets = this.targets;
+        int epoch = this.epoch;
+        int dist = this.depth[s] + 1;
+        int tail = this.tail[s];
+        if (QueryStats.ENABLED) this.dequeued += tail - this.head[s];
+        for (int end = tail, i = this.head[s]; i < end; i++) {
+            int x = queue[i];
+            if (QueryStats.ENABLED) this.relaxed += offsets[x + 1] - offsets[x];
+            for (int e = offsets[x], last = offsets[x + 1]; e < last; e++) {
+                int w = targets[e];
+                if (mark[w] == epoch) continue;
+                mark[w] = epoch;
+                distTo[w] = dist;
+                edgeTo[w] = x;
+                queue[tail++] = w;
+                if (otherMark[w] == epoch && dist + otherDistTo[w] < best) {
+                    best = dist + otherDistTo[w];
+                    this.length = best;
+                    this.ancestor = w;
+                }
+            }
+        }
+        this.head[s] = this.tail[s];
+        this.tail[s] = tail;
+        this.depth[s] = dist;
+        return best;
+    }
 
-    public PairedShortCircuitBFS(Digraph G) {this.G = G;}
 
-    public Paths sapPaths(int v1, int v2) {
-        // TODO: implement.
-        return null;
+    /* Path from the nearest source on one side to v, v last. */
+    private int[] pathTo(int s, int v) {
+        int[] path = new int[this.distTo[s][v] + 1];
+        for (int i = path.length - 1; i > 0; i--) {
+            path[i] = v;
+            v = this.edgeTo[s][v];
+        }
+        path[0] = v;
+        return path;
     }
 
 
-}
\ No newline at end of file
+}
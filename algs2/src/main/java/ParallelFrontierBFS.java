@@ -0,0 +1,255 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Level-synchronous parallel BFS for SAP queries between large groups of
+ * vertices, e.g. every sense of two polysemous nouns. As in
+ * PairedShortCircuitBFS, the two sides are expanded one level at a time,
+ * the shallower side first, until nothing undiscovered could beat the
+ * best path found; but a wide level is cut into slices that are expanded
+ * at once on the common fork-join pool. Narrow levels, near the top of a
+ * hierarchy, are expanded inline, where forking would cost more than it
+ * saves.
+ *
+ * Each vertex's visit on each side is one long, the query's epoch above
+ * its distance, claimed by compare-and-set, so a vertex joins a frontier
+ * exactly once however many slices reach it together. Slices gather what
+ * they claim locally and reserve room in the next frontier with a single
+ * atomic add. Only one side expands at a time, so the other side's
+ * visits are stable while a slice checks them for a meeting. Among
+ * equally short paths found, the one through the lowest-numbered
+ * ancestor wins, so results don't depend on how slices were scheduled.
+ *
+ * An instance serves one query at a time (its workspace is shared by the
+ * slices of that query); use one per querying thread.
+ *
+ * @author Vince Reuter
+ */
+final class ParallelFrontierBFS {
+
+
+    /** Most frontier vertices one slice expands; narrower levels aren't forked at all. */
+    static final int SLICE = 256;
+
+    // Sentinel for length and ancestor when there's no common ancestor
+    private static final int NONE = -1;
+
+    // Indices of the two query sides within the workspace arrays
+    private static final int A = 0;
+    private static final int B = 1;
+
+    // Best (length, ancestor) packed high to low, so that the minimum is the best
+    private static final long NO_BEST = Long.MAX_VALUE;
+
+    // CSR adjacency shared with the (immutable) digraph
+    private final int[] offsets;
+    private final int[] targets;
+
+    /* Scratch workspace, one row per query side: visits, and the frontiers in discovery order */
+    private final AtomicLongArray[] visits;
+    private final int[][] queue;
+    private final int[] head = new int[2];
+    private final AtomicInteger[] tail = {new AtomicInteger(), new AtomicInteger()};
+    private final int[] depth = new int[2];
+    private int epoch;
+
+    private final AtomicLong best = new AtomicLong(NO_BEST);
+
+    /* Edges examined by the current search, counted only when QueryStats is recording */
+    private final LongAdder relaxed = new LongAdder();
+    private long dequeued;
+
+
+    /**
+     * Allocate the reusable search workspace for the given digraph.
+     *
+     * @param G digraph within which to search
+     */
+    ParallelFrontierBFS(ImmutableDigraph G) {
+        int V = G.V();
+        this.offsets = G.offsets();
+        this.targets = G.targets();
+        this.visits = new AtomicLongArray[] {new AtomicLongArray(V), new AtomicLongArray(V)};
+        this.queue = new int[2][V];
+    }
+
+
+    /**
+     * Find length of shortest ancestral path between any vertex in
+     * one group and any vertex in another.
+     *
+     * @param sourcesA one group of query vertices
+     * @param sourcesB other group of query vertices
+     * @return length of SAP between the groups; -1 if nonexistent
+     */
+    int search(Iterable<Integer> sourcesA, Iterable<Integer> sourcesB) {
+        begin();
+        for (int s : sourcesA) seed(A, s);
+        for (int s : sourcesB) seed(B, s);
+        while (true) {
+            int boundA = bound(A);
+            int boundB = bound(B);
+            if (Math.min(boundA, boundB) >= lengthOf(this.best.get())) break;
+            expand(boundA <= boundB ? A : B);
+        }
+        if (QueryStats.ENABLED) {
+            QueryStats.search(this.dequeued, this.relaxed.sum(),
+                              this.head[A] != this.tail[A].get() || this.head[B] != this.tail[B].get());
+        }
+        return length();
+    }
+
+
+    /** Length of the most recent search's SAP; -1 if none. */
+    int length() {
+        long best = this.best.get();
+        return best == NO_BEST ? NONE : lengthOf(best);
+    }
+
+
+    /** Common ancestor found by the most recent search; -1 if none. */
+    int ancestor() {
+        long best = this.best.get();
+        return best == NO_BEST ? NONE : (int) best;
+    }
+
+
+    /**
+     * Package the most recent search's result, without vertex sequences.
+     *
+     * @return result of the most recent search
+     */
+    AncestralPath result() {
+        int x = ancestor();
+        if (x == NONE) return AncestralPath.NO_PATH;
+        return new AncestralPath(x, (int) this.visits[A].get(x), (int) this.visits[B].get(x), null, null);
+    }
+
+
+    /* Start a new query: invalidate all visits by bumping the epoch. */
+    private void begin() {
+        if (this.epoch == Integer.MAX_VALUE) {
+            // Stamps from a full cycle of epochs ago would look current.
+            for (int s = A; s <= B; s++) {
+                for (int v = 0; v < this.visits[s].length(); v++) this.visits[s].set(v, 0L);
+            }
+            this.epoch = 0;
+        }
+        this.epoch++;
+        for (int s = A; s <= B; s++) {
+            this.head[s] = 0;
+            this.tail[s].set(0);
+            this.depth[s] = 0;
+        }
+        this.best.set(NO_BEST);
+        this.relaxed.reset();
+        this.dequeued = 0;
+    }
+
+
+    /* Add a source vertex to one side; a vertex in both groups is its own SAP. */
+    private void seed(int s, int v) {
+        if (visited(this.visits[s].get(v))) return;
+        this.visits[s].set(v, stamp(0));
+        this.queue[s][this.tail[s].getAndIncrement()] = v;
+        long other = this.visits[1 - s].get(v);
+        if (visited(other)) offer(0, v);
+    }
+
+
+    /* Smallest distance at which a side could still discover a vertex. */
+    private int bound(int s) {
+        return this.head[s] == this.tail[s].get() ? Integer.MAX_VALUE : this.depth[s] + 1;
+    }
+
+
+    /* Discover the next level of one side: inline if it's narrow, else in slices on the common pool. */
+    private void expand(int s) {
+        int from = this.head[s];
+        int to = this.tail[s].get();
+        if (QueryStats.ENABLED) this.dequeued += to - from;
+        Level level = new Level(s, this.depth[s] + 1, from, to);
+        if (to - from <= SLICE) level.compute();
+        else ForkJoinPool.commonPool().invoke(level);
+        this.head[s] = to;
+        this.depth[s]++;
+    }
+
+
+    /* Record a meeting at x, keeping the shortest path and, among those, the lowest ancestor. */
+    private void offer(int length, int x) {
+        long candidate = ((long) length << 32) | x;
+        for (long current = this.best.get(); candidate < current; current = this.best.get()) {
+            if (this.best.compareAndSet(current, candidate)) return;
+        }
+    }
+
+
+    private long stamp(int dist) {return ((long) this.epoch << 32) | dist;}
+
+    private boolean visited(long visit) {return (int) (visit >>> 32) == this.epoch;}
+
+    private static int lengthOf(long best) {return best == NO_BEST ? Integer.MAX_VALUE : (int) (best >>> 32);}
+
+
+    /* Expansion of frontier entries [from, to) of one side, split in halves down to a slice. */
+    private final class Level extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int s;
+        private final int dist;
+        private final int from;
+        private final int to;
+
+        Level(int s, int dist, int from, int to) {
+            this.s = s;
+            this.dist = dist;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (this.to - this.from > SLICE) {
+                int mid = (this.from + this.to) >>> 1;
+                invokeAll(new Level(this.s, this.dist, this.from, mid),
+                          new Level(this.s, this.dist, mid, this.to));
+                return;
+            }
+            ParallelFrontierBFS bfs = ParallelFrontierBFS.this;
+            AtomicLongArray visits = bfs.visits[this.s];
+            AtomicLongArray otherVisits = bfs.visits[1 - this.s];
+            int[] queue = bfs.queue[this.s];
+            int[] offsets = bfs.offsets;
+            int[] targets = bfs.targets;
+            long claim = bfs.stamp(this.dist);
+            int[] claimed = new int[16];
+            int n = 0;
+            long relaxed = 0;
+            for (int i = this.from; i < this.to; i++) {
+                int x = queue[i];
+                relaxed += offsets[x + 1] - offsets[x];
+                for (int e = offsets[x], last = offsets[x + 1]; e < last; e++) {
+                    int w = targets[e];
+                    long visit = visits.get(w);
+                    if (bfs.visited(visit) || !visits.compareAndSet(w, visit, claim)) continue;
+                    if (n == claimed.length) claimed = Arrays.copyOf(claimed, 2 * n);
+                    claimed[n++] = w;
+                    long other = otherVisits.get(w);
+                    if (bfs.visited(other)) bfs.offer(this.dist + (int) other, w);
+                }
+            }
+            if (n > 0) System.arraycopy(claimed, 0, queue, bfs.tail[this.s].getAndAdd(n), n);
+            if (QueryStats.ENABLED) bfs.relaxed.add(relaxed);
+        }
+
+    }
+
+
+}
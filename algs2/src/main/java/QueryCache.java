@@ -0,0 +1,170 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Size-bounded cache of SAP query results. Entries are spread over
+ * independently locked segments, so concurrent readers rarely contend,
+ * and each segment evicts by the configured policy once it's full.
+ * Hits, misses and evictions are counted for monitoring.
+ *
+ * @author Vince Reuter
+ * @param <K> query key type; should treat symmetric queries as equal
+ */
+public final class QueryCache<K> {
+
+
+    /** Which entry a full segment gives up to make room. */
+    public enum Policy {
+        /** Evict the entry that was read or written least recently. */
+        LRU,
+        /** Evict the entry that was written earliest. */
+        FIFO
+    }
+
+
+    // Upper limit on lock striping; more rarely helps at these sizes.
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final int capacity;
+    private final Policy policy;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    /**
+     * Create an empty cache.
+     *
+     * @param capacity maximum number of entries held
+     * @param policy how to choose an entry to evict
+     * @throws IllegalArgumentException if capacity isn't positive
+     */
+    public QueryCache(int capacity, Policy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be positive; got " + capacity);
+        }
+        if (policy == null) throw new NullPointerException("Null eviction policy");
+        this.capacity = capacity;
+        this.policy = policy;
+        int n = Math.min(MAX_SEGMENTS, Integer.highestOneBit(capacity));
+        this.segments = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            // Spread the remainder so that segment capacities sum to capacity.
+            int segmentCapacity = capacity / n + (i < capacity % n ? 1 : 0);
+            this.segments[i] = new Segment(segmentCapacity, policy == Policy.LRU, this.evictions);
+        }
+    }
+
+
+    /**
+     * Look up a cached result, counting a hit or a miss.
+     *
+     * @param key query key
+     * @return cached result, or null if absent
+     */
+    public AncestralPath get(K key) {
+        Segment segment = segmentFor(key);
+        AncestralPath result;
+        synchronized (segment) {result = segment.get(key);}
+        if (result == null) this.misses.increment();
+        else this.hits.increment();
+        if (QueryStats.ENABLED) QueryStats.cacheLookup(result != null);
+        return result;
+    }
+
+
+    /**
+     * Store a result, evicting another entry if the key's segment is full.
+     *
+     * @param key query key
+     * @param result result to cache
+     */
+    public void put(K key, AncestralPath result) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {segment.put(key, result);}
+    }
+
+
+    /** Drop every entry; counters are left as they are. */
+    public void clear() {
+        for (Segment segment : this.segments) {
+            synchronized (segment) {segment.clear();}
+        }
+    }
+
+
+    /* Accessors for configuration and metrics */
+    public int capacity() {return this.capacity;}
+    public Policy policy() {return this.policy;}
+    public long hits() {return this.hits.sum();}
+    public long misses() {return this.misses.sum();}
+    public long evictions() {return this.evictions.sum();}
+
+
+    /**
+     * Get the fraction of lookups that were hits.
+     *
+     * @return hit rate, or 0 if there have been no lookups
+     */
+    public double hitRate() {
+        long h = hits();
+        long total = h + misses();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+
+    /**
+     * Count the entries currently held.
+     *
+     * @return number of cached entries
+     */
+    public int size() {
+        int n = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {n += segment.size();}
+        }
+        return n;
+    }
+
+
+    public String toString() {
+        return String.format("%s cache: %d/%d entries, %d hits, %d misses, %d evictions",
+                             this.policy, size(), this.capacity, hits(), misses(), evictions());
+    }
+
+
+    /* Pick a key's segment, mixing high hash bits into the low ones. */
+    private Segment segmentFor(K key) {
+        int h = key.hashCode();
+        return this.segments[(h ^ (h >>> 16)) & (this.segments.length - 1)];
+    }
+
+
+    /* Bounded map for one lock stripe; access order gives LRU, insertion order FIFO. */
+    private static final class Segment extends LinkedHashMap<Object, AncestralPath> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final LongAdder evictions;
+
+        private Segment(int capacity, boolean accessOrder, LongAdder evictions) {
+            super(16, 0.75f, accessOrder);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<Object, AncestralPath> eldest) {
+            if (size() <= this.capacity) return false;
+            this.evictions.increment();
+            return true;
+        }
+
+    }
+
+
+}
@@ -0,0 +1,278 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * Process-wide query instrumentation for SAP and WordNet: how much graph
+ * each search covered, how often caches answered and searches stopped
+ * early, and a latency histogram per operation. Everything is exposed
+ * through JMX, as algs2:type=QueryStats and one
+ * algs2:type=QueryLatency,operation=... MXBean per operation.
+ *
+ * Recording is off unless the JVM is started with -Dalgs2.stats=true.
+ * The switch is read once, into a constant, and every recording site is
+ * guarded by it, so when it's off the JIT drops the recording code and
+ * the query path costs exactly what it did before; nothing is registered
+ * with JMX either. When it's on, searches count into local fields and
+ * publish once per query to striped counters (LongAdder), and latencies
+ * go to log-linear histograms: four buckets per power of two, so a
+ * percentile is accurate to within an eighth.
+ *
+ * @author Vince Reuter
+ */
+public final class QueryStats {
+
+
+    /** Whether instrumentation is recording, fixed at startup by the algs2.stats property. */
+    public static final boolean ENABLED = Boolean.getBoolean("algs2.stats");
+
+
+    /** Timed operations, each with its own latency histogram. */
+    public enum Operation {
+        SAP_LENGTH("SAP.length"),
+        SAP_ANCESTOR("SAP.ancestor"),
+        SAP_QUERY("SAP.query"),
+        SAP_BOUNDED_LENGTH("SAP.boundedLength"),
+        SAP_ANCESTORS("SAP.ancestors"),
+        SAP_BATCH("SAP.batch"),
+        WORDNET_DISTANCE("WordNet.distance"),
+        WORDNET_SAP("WordNet.sap"),
+        WORDNET_BOUNDED_DISTANCE("WordNet.boundedDistance"),
+        WORDNET_ANCESTORS("WordNet.ancestors"),
+        WORDNET_IS_HYPERNYM("WordNet.isHypernymOf"),
+        WORDNET_HYPERNYMS("WordNet.hypernyms"),
+        WORDNET_NEAREST("WordNet.nearest");
+
+        private final String label;
+        private final Latency latency;
+
+        Operation(String label) {
+            this.label = label;
+            this.latency = new Latency(label);
+        }
+
+        /** Name of the operation, as in its MXBean's name. */
+        public String label() {return this.label;}
+    }
+
+
+    /** Totals over all queries since startup (or the last reset). */
+    public interface CountersMXBean {
+        /** Number of SAP operations, over all latency histograms for SAP. */
+        long getQueries();
+        /** Vertices taken off a search frontier and expanded. */
+        long getVerticesDequeued();
+        /** Edges examined while expanding those vertices. */
+        long getEdgesRelaxed();
+        /** Query cache lookups that found a result. */
+        long getCacheHits();
+        /** Query cache lookups that didn't. */
+        long getCacheMisses();
+        /** Searches that stopped with vertices still on a frontier, having proven their answer. */
+        long getEarlyTerminations();
+        /** Zero every counter. */
+        void reset();
+    }
+
+
+    /** Latency distribution of one operation, in nanoseconds. */
+    public interface LatencyMXBean {
+        String getOperation();
+        long getCount();
+        double getMeanNanos();
+        long getMaxNanos();
+        long getP50Nanos();
+        long getP90Nanos();
+        long getP99Nanos();
+        long getP999Nanos();
+        /** Zero the histogram. */
+        void reset();
+    }
+
+
+    private static final LongAdder DEQUEUED = new LongAdder();
+    private static final LongAdder RELAXED = new LongAdder();
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+    private static final LongAdder EARLY_TERMINATIONS = new LongAdder();
+
+    private static final Counters COUNTERS = new Counters();
+
+    static {
+        if (ENABLED) {
+            register("algs2:type=QueryStats", COUNTERS);
+            for (Operation op : Operation.values()) {
+                register("algs2:type=QueryLatency,operation=" + op.label, op.latency);
+            }
+        }
+    }
+
+    private QueryStats() {}
+
+
+    /**
+     * Get the counters, e.g. to read them without JMX.
+     *
+     * @return process-wide counters; all zero unless {@link #ENABLED}
+     */
+    public static CountersMXBean counters() {return COUNTERS;}
+
+
+    /**
+     * Get an operation's latency histogram, e.g. to read it without JMX.
+     *
+     * @param op timed operation
+     * @return latency histogram of op; empty unless {@link #ENABLED}
+     */
+    public static LatencyMXBean latency(Operation op) {return op.latency;}
+
+
+    /* Recording, for the engines and query methods; callers guard each call with ENABLED. */
+
+    /* Start time of an operation, or 0 when not recording. */
+    static long start() {return ENABLED ? System.nanoTime() : 0L;}
+
+    /* Record an operation that started at the given time. */
+    static void record(Operation op, long start) {
+        op.latency.record(System.nanoTime() - start);
+    }
+
+    /* Record the work of one finished search. */
+    static void search(long dequeued, long relaxed, boolean stoppedEarly) {
+        DEQUEUED.add(dequeued);
+        RELAXED.add(relaxed);
+        if (stoppedEarly) EARLY_TERMINATIONS.increment();
+    }
+
+    /* Record a query cache lookup. */
+    static void cacheLookup(boolean hit) {
+        if (hit) CACHE_HITS.increment();
+        else CACHE_MISSES.increment();
+    }
+
+
+    private static void register(String name, Object mxbean) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(mxbean, new ObjectName(name));
+        } catch (InstanceAlreadyExistsException e) {
+            // Another copy of these classes (another class loader) got there first.
+        } catch (JMException e) {
+            throw new IllegalStateException("Can't register " + name, e);
+        }
+    }
+
+
+    private static final class Counters implements CountersMXBean {
+
+        public long getQueries() {
+            long queries = 0;
+            for (Operation op : Operation.values()) {
+                if (op.label.startsWith("SAP.")) queries += op.latency.getCount();
+            }
+            return queries;
+        }
+
+        public long getVerticesDequeued() {return DEQUEUED.sum();}
+        public long getEdgesRelaxed() {return RELAXED.sum();}
+        public long getCacheHits() {return CACHE_HITS.sum();}
+        public long getCacheMisses() {return CACHE_MISSES.sum();}
+        public long getEarlyTerminations() {return EARLY_TERMINATIONS.sum();}
+
+        public void reset() {
+            DEQUEUED.reset();
+            RELAXED.reset();
+            CACHE_HITS.reset();
+            CACHE_MISSES.reset();
+            EARLY_TERMINATIONS.reset();
+        }
+
+    }
+
+
+    /*
+     * Log-linear histogram: values under 4 get a bucket each, and every
+     * power of two above is split into 4 equal buckets, by the 2 bits
+     * after the leading one.
+     */
+    private static final class Latency implements LatencyMXBean {
+
+        private static final int SUB_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+        private final String operation;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Latency(String operation) {this.operation = operation;}
+
+        void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            this.buckets.incrementAndGet(bucket(nanos));
+            this.count.increment();
+            this.total.add(nanos);
+            this.max.accumulate(nanos);
+        }
+
+        public String getOperation() {return this.operation;}
+        public long getCount() {return this.count.sum();}
+        public long getMaxNanos() {return this.max.get();}
+        public long getP50Nanos() {return percentile(0.5);}
+        public long getP90Nanos() {return percentile(0.9);}
+        public long getP99Nanos() {return percentile(0.99);}
+        public long getP999Nanos() {return percentile(0.999);}
+
+        public double getMeanNanos() {
+            long n = this.count.sum();
+            return n == 0 ? 0.0 : (double) this.total.sum() / n;
+        }
+
+        public void reset() {
+            for (int b = 0; b < BUCKETS; b++) this.buckets.set(b, 0);
+            this.count.reset();
+            this.total.reset();
+            this.max.reset();
+        }
+
+        /* Upper bound of the bucket holding the given fraction of recorded values. */
+        private long percentile(double fraction) {
+            long n = 0;
+            for (int b = 0; b < BUCKETS; b++) n += this.buckets.get(b);
+            if (n == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(fraction * n));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += this.buckets.get(b);
+                if (seen >= rank) return Math.min(upperBound(b), getMaxNanos());
+            }
+            return getMaxNanos();
+        }
+
+        private static int bucket(long nanos) {
+            if (nanos < SUB_BUCKETS) return (int) nanos;
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long width = 1L << (exponent - SUB_BITS);
+            return ((SUB_BUCKETS + bucket % SUB_BUCKETS) * width) + width - 1;
+        }
+
+    }
+
+
+}
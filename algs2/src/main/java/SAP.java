@@ -1,32 +1,71 @@
-import java.util.ArrayList;
+import java.io.BufferedOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
-import edu.princeton.cs.algs4.BreadthFirstDirectedPaths;
 import edu.princeton.cs.algs4.Digraph;
 import edu.princeton.cs.algs4.In;
 import edu.princeton.cs.algs4.StdIn;
 import edu.princeton.cs.algs4.StdOut;
 
 
-// TODO: exceptions, corner cases, docstrings
-
-
 /**
  * SAP (shortest ancestral path) ADT, motivated
  * by need to support WordNet application use case.
  *
+ * Queries are safe to run from many threads at once, with no
+ * locking: the graph is immutable and shared, and each thread
+ * searches with its own lazily created scratch workspace.
+ *
+ * Optionally (see {@link #withLabels()}), every vertex's ancestors can
+ * be precomputed as a label, so that queries merge two labels instead
+ * of searching the graph.
+ *
+ * Queries between large groups of vertices (512 sources or more in all,
+ * two slices of the parallel search) expand each wide BFS level in
+ * parallel on the common fork-join pool; smaller ones, and any made from
+ * within that pool, search sequentially. Either way, the length is the
+ * same; where several ancestors are equally near, the two searches may
+ * pick different ones, but a parallel search picks the same one every
+ * time, however its work was scheduled.
+ *
  * @author Vince Reuter
  */
 public class SAP {
 
 
-    // Length and ancestor sentinel for when there's no common ancestor
-    private static final int NO_ANCESTOR = -1;
+    /* Command-line flags for streaming batch mode, and binary input within it */
+    private static final String BATCH_FLAG = "--batch";
+    private static final String BINARY_FLAG = "--binary";
+
+    // Fewest sources, over both groups, for which group queries search in parallel; levels narrower than a slice never fork
+    private static final int PARALLEL_SOURCES = 2 * ParallelFrontierBFS.SLICE;
+
+    /** Result of a bounded query when no ancestral path is short enough (or none exists). */
+    public static final int FARTHER_THAN_BOUND = -2;
+
+    /** Result of a bounded query that ran out of time before it could answer. */
+    public static final int BUDGET_EXCEEDED = -3;
 
     // Underlying (very possibly non-acyclic) directed graph
-    private final Digraph G;
+    private final ImmutableDigraph G;
+
+    // Lockstep search over G for each thread, with scratch space reused
+    // across that thread's queries; G itself is shared by all of them
+    private final ThreadLocal<PairedShortCircuitBFS> engines;
+
+    // Fork-join search over G for large groups, likewise one per querying thread
+    private final ThreadLocal<ParallelFrontierBFS> parallelEngines;
+
+    // Optional results of single-vertex queries; null if not caching
+    private final QueryCache<Long> cache;
+
+    // Optional ancestor labels that answer queries without searching; null if searching
+    private final AncestorLabels labels;
 
 
     /**
@@ -35,7 +74,81 @@ public class SAP {
      *
      * @param G directed graph to encoding data for this SAP instance
      */
-    public SAP(Digraph G) {this.G = new Digraph(G);}
+    public SAP(Digraph G) {this(new ImmutableDigraph(G));}
+
+
+    /**
+     * Immutable directed graph defines the SAP ADT. The graph
+     * can't change, so it's shared rather than copied.
+     *
+     * @param G directed graph to encoding data for this SAP instance
+     */
+    public SAP(ImmutableDigraph G) {this(G, null);}
+
+
+    /**
+     * Immutable directed graph defines the SAP ADT, with a cache in
+     * front of single-vertex queries. Since SAP is symmetric, v-w and
+     * w-v queries share one cache entry.
+     *
+     * @param G directed graph to encoding data for this SAP instance
+     * @param cache store for single-vertex query results; null for none
+     */
+    public SAP(ImmutableDigraph G, QueryCache<Long> cache) {
+        this.G = G;
+        this.engines = new ThreadLocal<PairedShortCircuitBFS>() {
+            protected PairedShortCircuitBFS initialValue() {
+                return new PairedShortCircuitBFS(SAP.this.G);
+            }
+        };
+        this.parallelEngines = new ThreadLocal<ParallelFrontierBFS>() {
+            protected ParallelFrontierBFS initialValue() {
+                return new ParallelFrontierBFS(SAP.this.G);
+            }
+        };
+        this.cache = cache;
+        this.labels = null;
+    }
+
+
+    /* Share another SAP's graph and search engines, answering queries from labels. */
+    private SAP(SAP base, AncestorLabels labels) {
+        this.G = base.G;
+        this.engines = base.engines;
+        this.parallelEngines = base.parallelEngines;
+        this.cache = null;
+        this.labels = labels;
+    }
+
+
+    /**
+     * Get a view of this SAP that answers queries by merging precomputed
+     * ancestor labels, with no graph traversal. Building the labels runs
+     * one exhaustive BFS per vertex (in parallel), and they take space in
+     * proportion to the total size of all ancestor sets, so they suit
+     * graphs like WordNet's, whose ancestor sets are small. Merging two
+     * labels beats a cache lookup, so the view has no cache. Path
+     * reconstruction still searches the graph.
+     *
+     * @return SAP view over the same graph, backed by labels
+     */
+    public SAP withLabels() {
+        return this.labels != null ? this : new SAP(this, AncestorLabels.build(this.G));
+    }
+
+
+    /* Labeled view with already built (e.g. persisted) labels for this graph. */
+    SAP withLabels(AncestorLabels labels) {
+        if (labels.V() != this.G.V()) {
+            throw new IllegalArgumentException(String.format(
+                    "Labels for %d vertices, but graph has %d", labels.V(), this.G.V()));
+        }
+        return new SAP(this, labels);
+    }
+
+
+    /* Ancestor labels backing queries; null if searching. */
+    AncestorLabels labels() {return this.labels;}
 
 
     /**
@@ -47,8 +160,16 @@ public class SAP {
      * @return lentgh of SAP between v and w; -1 if nonexistent
      */
     public int length(int v, int w) {
-        Paths sapComponents = sap(v, w);
-        return sapComponents == null ? NO_ANCESTOR : sapComponents.length();
+        long start = QueryStats.start();
+        try {
+            validate(v);
+            validate(w);
+            if (this.labels != null) return this.labels.length(v, w);
+            if (this.cache != null) return cachedQuery(v, w).length();
+            return this.engines.get().search(v, w);
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_LENGTH, start);
+        }
     }
 
 
@@ -61,8 +182,18 @@ public class SAP {
      * @return index of common ancestor that creates the SAP from v to w
      */
     public int ancestor(int v, int w) {
-        Paths sapComponents = sap(v, w);
-        return sapComponents == null ? NO_ANCESTOR : sapComponents.ancestor();
+        long start = QueryStats.start();
+        try {
+            validate(v);
+            validate(w);
+            if (this.labels != null) return this.labels.meet(v, w).ancestor();
+            if (this.cache != null) return cachedQuery(v, w).ancestor();
+            PairedShortCircuitBFS bfs = this.engines.get();
+            bfs.search(v, w);
+            return bfs.ancestor();
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_ANCESTOR, start);
+        }
     }
 
 
@@ -77,8 +208,16 @@ public class SAP {
      * @return lentgh of SAP; -1 if nonexistent
      */
     public int length(Iterable<Integer> v, Iterable<Integer> w) {
-        Paths sapComponents = sap(v, w);
-        return sapComponents == null ? NO_ANCESTOR : sapComponents.length();
+        long start = QueryStats.start();
+        try {
+            validate(v);
+            validate(w);
+            if (this.labels != null) return this.labels.meet(v, w).length();
+            if (parallel(v, w)) return this.parallelEngines.get().search(v, w);
+            return this.engines.get().search(v, w);
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_LENGTH, start);
+        }
     }
 
 
@@ -92,171 +231,448 @@ public class SAP {
      * @return index of common ancestor that creates the SAP; -1 if nonexistent
      */
     public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
-        Paths sapComponents = sap(v, w);
-        return sapComponents == null ? NO_ANCESTOR : sapComponents.ancestor();
+        long start = QueryStats.start();
+        try {
+            validate(v);
+            validate(w);
+            if (this.labels != null) return this.labels.meet(v, w).ancestor();
+            if (parallel(v, w)) {
+                ParallelFrontierBFS bfs = this.parallelEngines.get();
+                bfs.search(v, w);
+                return bfs.ancestor();
+            }
+            PairedShortCircuitBFS bfs = this.engines.get();
+            bfs.search(v, w);
+            return bfs.ancestor();
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_ANCESTOR, start);
+        }
     }
 
 
     /**
-     * Determine shortest path through common ancestor between v and w.
-     * If v and w share no common ancestor, return null. Otherwise, return
-     * a Paths ADT that stores each component path (v to ancestor and w to
-     * ancestor), along with total path length and the common ancestor.
+     * Compute length, common ancestor and per-side distances of the
+     * shortest ancestral path between v and w, all in one search.
      *
-     * @param v first query vertex
-     * @param w other query vertex
-     * @return null if no common ancestor, otherwise ancestor- and length-storing
-     * ADT representing the shortest ancestral path
+     * @param v index for one of the two SAP query vertices
+     * @param w index for the other of two SAP query vertices
+     * @return SAP components, without vertex sequences
      */
-    private Paths sap(int v, int w) {
-        validate(v);
-        validate(w);
-        BreadthFirstDirectedPaths fromV = new BreadthFirstDirectedPaths(this.G, v);
-        BreadthFirstDirectedPaths fromW = new BreadthFirstDirectedPaths(this.G, w);
-        return processPaths(fromV, fromW);
+    public AncestralPath query(int v, int w) {
+        long start = QueryStats.start();
+        try {
+            validate(v);
+            validate(w);
+            if (this.labels != null) return this.labels.meet(v, w);
+            if (this.cache != null) return cachedQuery(v, w);
+            PairedShortCircuitBFS bfs = this.engines.get();
+            bfs.search(v, w);
+            return bfs.result(false);
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_QUERY, start);
+        }
     }
 
 
     /**
-     * Determine shortest path through common ancestor between any vertex
-     * in v and any vertex in w. If no pair of vertices in which on vertex
-     * comes from v and the other comes from w share a common ancestor,
-     * return null. Otherwise, return a Paths ADT that stores each component
-     * path (v to ancestor and w to ancestor), along with t
-     * otal path length and the common ancestor.
+     * Compute length, common ancestor and per-side distances of the
+     * shortest ancestral path between any vertex in v and any vertex
+     * in w, all in one search.
      *
-     * @param v first query vertex
-     * @param w other query vertex
-     * @return null if no common ancestor, otherwise ancestor- and
-     * length-storing ADT representing the shortest ancestral path
+     * @param v first set of SAP query vertices
+     * @param w other set of SAP query vertices
+     * @return SAP components, without vertex sequences
      */
-    private Paths sap(Iterable<Integer> v, Iterable<Integer> w) {
-        for (int vertex : v) validate(vertex);
-        for (int vertex : w) validate(vertex);
-        BreadthFirstDirectedPaths fromV = new BreadthFirstDirectedPaths(this.G, v);
-        BreadthFirstDirectedPaths fromW = new BreadthFirstDirectedPaths(this.G, w);
-        return processPaths(fromV, fromW);
+    public AncestralPath query(Iterable<Integer> v, Iterable<Integer> w) {
+        long start = QueryStats.start();
+        try {
+            validate(v);
+            validate(w);
+            if (this.labels != null) return this.labels.meet(v, w);
+            if (parallel(v, w)) {
+                ParallelFrontierBFS bfs = this.parallelEngines.get();
+                bfs.search(v, w);
+                return bfs.result();
+            }
+            PairedShortCircuitBFS bfs = this.engines.get();
+            bfs.search(v, w);
+            return bfs.result(false);
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_QUERY, start);
+        }
     }
 
 
     /**
-     * Following to BFS in G from one vertex and BFS in G from another vertex,
-     * process results to determine the length of the shortest path through a
-     * common ancestor between the two vertices from which the BFSs were begun.
-     * The result is an ADT that stores the path from each of the two source
-     * vertices to the common ancestor, along with the paths themselves and
-     * total path length. The result is null if the BFS source vertices share
-     * no common ancestor.
+     * Like {@link #query(int, int)}, but also reconstruct the vertex
+     * sequence from each side up to the common ancestor.
      *
-     * @param fromV ADT of BFS results from a single vertex in G
-     * @param fromW ADT of BFS results from another vertex in G
-     * @return ADT that stores the path from each of the two source
-     * vertices to the common ancestor, along with the paths themselves and
-     * total path length, null if BFS source vertices share no common ancestor
+     * @param v index for one of the two SAP query vertices
+     * @param w index for the other of two SAP query vertices
+     * @return SAP components, including vertex sequences
      */
-    private Paths processPaths(BreadthFirstDirectedPaths fromV, BreadthFirstDirectedPaths fromW) {
-        List<Integer> common = new LinkedList<Integer>();
-        for (int i = 0; i < G.V(); i++) {
-            if (fromV.hasPathTo(i) && fromW.hasPathTo(i)) common.add(i);
+    public AncestralPath queryWithPaths(int v, int w) {
+        long start = QueryStats.start();
+        try {
+            validate(v);
+            validate(w);
+            PairedShortCircuitBFS bfs = this.engines.get();
+            bfs.search(v, w);
+            return bfs.result(true);
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_QUERY, start);
         }
+    }
 
-        if (common.size() == 0) return null;
 
-        int minDist = Integer.MAX_VALUE;
-        int closestAncestor = NO_ANCESTOR;
-        int dist;
-        for (int ancestor : common) {
-            dist = fromV.distTo(ancestor) + fromW.distTo(ancestor);
-            if (dist < minDist) {
-                minDist = dist;
-                closestAncestor = ancestor;
-            }
+    /**
+     * Like {@link #query(Iterable, Iterable)}, but also reconstruct the
+     * vertex sequence from each side up to the common ancestor.
+     *
+     * @param v first set of SAP query vertices
+     * @param w other set of SAP query vertices
+     * @return SAP components, including vertex sequences
+     */
+    public AncestralPath queryWithPaths(Iterable<Integer> v, Iterable<Integer> w) {
+        long start = QueryStats.start();
+        try {
+            validate(v);
+            validate(w);
+            PairedShortCircuitBFS bfs = this.engines.get();
+            bfs.search(v, w);
+            return bfs.result(true);
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_QUERY, start);
         }
+    }
+
 
-        return new Paths(fromV.pathTo(closestAncestor), fromW.pathTo(closestAncestor));
+    /**
+     * Determine the length of the shortest ancestral path between v and
+     * w, but only if it's at most maxLength. The search stops as soon as
+     * no path that short can exist, so a far or disconnected pair costs
+     * only the neighbourhoods within maxLength of v and w.
+     *
+     * @param v index for one of the two SAP query vertices
+     * @param w index for the other of two SAP query vertices
+     * @param maxLength longest path length of interest
+     * @return length of SAP between v and w; {@link #FARTHER_THAN_BOUND} if
+     *         that's longer than maxLength or there's no ancestral path
+     * @throws IllegalArgumentException if maxLength is negative
+     */
+    public int boundedLength(int v, int w, int maxLength) {
+        return boundedLength(v, w, maxLength, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
     }
 
 
-    /* Per assignment specification, throw index OOB exception for low/high vertex. */
-    private void validate(int v) {
-        int upperBound = G.V() - 1;
-        if (v < 0 || v > upperBound) {
-            String errMsg = String.format("Need vertex v; 0 <= v <= %d; got %d",
-                                          upperBound, v);
-            throw new IndexOutOfBoundsException(errMsg);
+    /**
+     * Like {@link #boundedLength(int, int, int)}, but also give up once
+     * the time budget is spent. The clock is checked between BFS levels,
+     * so a query overruns its budget by at most one level's expansion.
+     * Label merges answer in bounded time and never give up. Bounded
+     * queries bypass the cache, since they don't produce full results.
+     *
+     * @param v index for one of the two SAP query vertices
+     * @param w index for the other of two SAP query vertices
+     * @param maxLength longest path length of interest
+     * @param budget time allowed for the search
+     * @param unit unit of the budget
+     * @return length of SAP between v and w; {@link #FARTHER_THAN_BOUND} if
+     *         that's longer than maxLength or there's no ancestral path;
+     *         {@link #BUDGET_EXCEEDED} if time ran out first
+     * @throws IllegalArgumentException if maxLength or budget is negative
+     */
+    public int boundedLength(int v, int w, int maxLength, long budget, TimeUnit unit) {
+        long start = QueryStats.start();
+        try {
+            validate(v);
+            validate(w);
+            validateBounds(maxLength, budget, unit);
+            if (this.labels != null) return within(this.labels.length(v, w), maxLength);
+            PairedShortCircuitBFS bfs = this.engines.get();
+            return bounded(bfs, bfs.search(v, w, maxLength, unit.toNanos(budget)));
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_BOUNDED_LENGTH, start);
         }
     }
 
 
-    /** Store path from one vertex to nearest common ancestor shared with another vertex. */
-    private final class Paths {
+    /**
+     * Group version of {@link #boundedLength(int, int, int)}.
+     *
+     * @param v first set of SAP query vertices
+     * @param w other set of SAP query vertices
+     * @param maxLength longest path length of interest
+     * @return length of SAP; {@link #FARTHER_THAN_BOUND} if that's longer
+     *         than maxLength or there's no ancestral path
+     * @throws IllegalArgumentException if maxLength is negative
+     */
+    public int boundedLength(Iterable<Integer> v, Iterable<Integer> w, int maxLength) {
+        return boundedLength(v, w, maxLength, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
 
-        // Components of path to nearest common ancestor
-        private Iterable<Integer> fromA;
-        private Iterable<Integer> fromB;
 
-        // Nearest common ancestor
-        private final int ancestor;
+    /**
+     * Group version of {@link #boundedLength(int, int, int, long, TimeUnit)}.
+     *
+     * @param v first set of SAP query vertices
+     * @param w other set of SAP query vertices
+     * @param maxLength longest path length of interest
+     * @param budget time allowed for the search
+     * @param unit unit of the budget
+     * @return length of SAP; {@link #FARTHER_THAN_BOUND} if that's longer
+     *         than maxLength or there's no ancestral path;
+     *         {@link #BUDGET_EXCEEDED} if time ran out first
+     * @throws IllegalArgumentException if maxLength or budget is negative
+     */
+    public int boundedLength(Iterable<Integer> v, Iterable<Integer> w, int maxLength, long budget, TimeUnit unit) {
+        long start = QueryStats.start();
+        try {
+            validate(v);
+            validate(w);
+            validateBounds(maxLength, budget, unit);
+            if (this.labels != null) return within(this.labels.meet(v, w).length(), maxLength);
+            PairedShortCircuitBFS bfs = this.engines.get();
+            return bounded(bfs, bfs.search(v, w, maxLength, unit.toNanos(budget)));
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_BOUNDED_LENGTH, start);
+        }
+    }
 
-        // Length of path between vertices through nearest common ancestor
-        private final int length;
 
-        /* Process component paths to determine total path length and common ancestor. */
-        private Paths(Iterable<Integer> fromA, Iterable<Integer> fromB) {
+    /**
+     * Find every ancestor of v along with its distance from v. Combining
+     * two such maps with {@link AncestorMap#length} gives their SAP length
+     * without searching again, which pays off when each vertex takes
+     * part in many queries.
+     *
+     * @param v query vertex
+     * @return ancestors of v (v included) and their distances
+     */
+    public AncestorMap ancestors(int v) {
+        long start = QueryStats.start();
+        try {
+            validate(v);
+            if (this.labels != null) return this.labels.ancestors(v);
+            return this.engines.get().ancestors(v);
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_ANCESTORS, start);
+        }
+    }
 
-            this.fromA = fromA;
-            this.fromB = fromB;
 
-            ArrayList<Integer> aPath = path(fromA);
-            ArrayList<Integer> bPath = path(fromB);
+    /**
+     * Find every ancestor of any vertex in v, along with its distance
+     * from the nearest vertex in v.
+     *
+     * @param v set of query vertices
+     * @return ancestors of v (v included) and their distances
+     */
+    public AncestorMap ancestors(Iterable<Integer> v) {
+        long start = QueryStats.start();
+        try {
+            validate(v);
+            if (this.labels != null) return this.labels.ancestors(v);
+            return this.engines.get().ancestors(v);
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_ANCESTORS, start);
+        }
+    }
 
-            /* Find component path lengths and common ancestor candidate. */
-            int numA = aPath.size();
-            int numB = bPath.size();
-            int ancestorA = aPath.get(numA - 1);
-            int ancestorB = bPath.get(numB - 1);
 
-            // Validate that nearest ancestor really is shared/common.
-            if (ancestorA != ancestorB) {
-                String errMsg = String.format(
-                        "Ancestor disagreement: %d and %d", ancestorA, ancestorB
-                );
-                throw new IllegalArgumentException(errMsg);
+    /**
+     * Find the ancestors of each of many vertices. Each distinct vertex
+     * is searched once, however often it's repeated, and the searches
+     * run in parallel on the common fork-join pool.
+     *
+     * @param sources query vertices
+     * @return ancestors (and distances) of sources[i], at index i
+     */
+    public AncestorMap[] ancestors(int[] sources) {
+        long start = QueryStats.start();
+        try {
+            for (int v : sources) validate(v);
+            int[] distinct = distinct(sources);
+            AncestorMap[] byDistinct = batchAncestors(distinct);
+            AncestorMap[] maps = new AncestorMap[sources.length];
+            for (int i = 0; i < sources.length; i++) {
+                maps[i] = byDistinct[Arrays.binarySearch(distinct, sources[i])];
             }
+            return maps;
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_BATCH, start);
+        }
+    }
 
-            /* Set nearest common ancestor and length of path through it. */
-            this.ancestor = ancestorA;
-            this.length = numA + numB - 2;
 
+    /**
+     * Determine SAP lengths for many vertex pairs at once, e.g. to fill a
+     * similarity matrix. Each distinct vertex is searched once, as in
+     * {@link #ancestors(int[])}, and every pair is then answered by
+     * merging its two ancestor maps, so a vertex in many pairs costs one
+     * search rather than one per pair.
+     *
+     * @param v one vertex of each pair
+     * @param w other vertex of each pair
+     * @return length of SAP between v[i] and w[i], at index i; -1 where nonexistent
+     * @throws IllegalArgumentException if v and w differ in length
+     */
+    public int[] lengths(int[] v, int[] w) {
+        long start = QueryStats.start();
+        try {
+            if (v.length != w.length) {
+                throw new IllegalArgumentException(String.format(
+                        "Need as many v as w vertices; got %d and %d", v.length, w.length));
+            }
+            for (int x : v) validate(x);
+            for (int x : w) validate(x);
+            int[] lengths = new int[v.length];
+            if (this.labels != null) {
+                for (int i = 0; i < v.length; i++) lengths[i] = this.labels.length(v[i], w[i]);
+                return lengths;
+            }
+            int[] both = Arrays.copyOf(v, v.length + w.length);
+            System.arraycopy(w, 0, both, v.length, w.length);
+            int[] distinct = distinct(both);
+            AncestorMap[] maps = batchAncestors(distinct);
+            for (int i = 0; i < v.length; i++) {
+                lengths[i] = AncestorMap.length(maps[Arrays.binarySearch(distinct, v[i])],
+                                                maps[Arrays.binarySearch(distinct, w[i])]);
+            }
+            return lengths;
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.SAP_BATCH, start);
         }
+    }
+
 
-        /* Accessor methods for processed/computed data */
-        public Iterator<Integer> fromA() {return this.fromA.iterator();}
-        public Iterator<Integer> fromB() {return this.fromB.iterator();}
-        public int ancestor() {return this.ancestor;}
-        public int length() {return this.length;}
-
-        /* Create ArrayList from Iterable. */
-        private ArrayList<Integer> path(Iterable<Integer> p) {
-            ArrayList<Integer> path = new ArrayList<Integer>();
-            for (int i : p) {path.add(i);}
-            return path;
+    /**
+     * Get the cache in front of single-vertex queries, e.g. for its metrics.
+     *
+     * @return query result cache; null if not caching
+     */
+    public QueryCache<Long> cache() {return this.cache;}
+
+
+    /* Look up, or compute and cache, the SAP between v and w (with v <= w as key). */
+    private AncestralPath cachedQuery(int v, int w) {
+        int lo = Math.min(v, w);
+        int hi = Math.max(v, w);
+        Long key = ((long) lo << 32) | hi;
+        AncestralPath result = this.cache.get(key);
+        if (result == null) {
+            PairedShortCircuitBFS bfs = this.engines.get();
+            bfs.search(lo, hi);
+            result = bfs.result(false);
+            this.cache.put(key, result);
         }
+        return v == lo ? result : result.reversed();
+    }
+
+
+    /*
+     * Whether a group query is large enough to search in parallel: enough
+     * sources, more than one core, and not already running on the common
+     * pool (e.g. inside a batch), whose cores are then busy anyway.
+     */
+    private static boolean parallel(Iterable<Integer> v, Iterable<Integer> w) {
+        if (ForkJoinPool.getCommonPoolParallelism() < 2
+                || Thread.currentThread() instanceof ForkJoinWorkerThread) return false;
+        return size(v, PARALLEL_SOURCES) + size(w, PARALLEL_SOURCES) >= PARALLEL_SOURCES;
+    }
+
+
+    /* Size of a group, counting no further than limit unless it's a Collection. */
+    private static int size(Iterable<Integer> group, int limit) {
+        if (group instanceof Collection) return ((Collection<Integer>) group).size();
+        int n = 0;
+        for (Iterator<Integer> it = group.iterator(); it.hasNext() && n < limit; it.next()) n++;
+        return n;
+    }
+
 
+    /* Bounded result from an exact length: the length if it's within bounds. */
+    private static int within(int length, int maxLength) {
+        return length == -1 || length > maxLength ? FARTHER_THAN_BOUND : length;
+    }
+
+
+    /* Bounded result from a bounded search. */
+    private static int bounded(PairedShortCircuitBFS bfs, int length) {
+        if (bfs.timedOut()) return BUDGET_EXCEEDED;
+        return length == -1 ? FARTHER_THAN_BOUND : length;
+    }
+
+
+    /* Throw IllegalArgumentException for a negative length or time bound. */
+    private static void validateBounds(int maxLength, long budget, TimeUnit unit) {
+        if (maxLength < 0) throw new IllegalArgumentException("Maximum length must be nonnegative; got " + maxLength);
+        if (budget < 0) throw new IllegalArgumentException("Time budget must be nonnegative; got " + budget);
+        if (unit == null) throw new NullPointerException("Null time unit");
+    }
+
+
+    /* Ancestors of each of the given (distinct) vertices, from labels or one search each. */
+    private AncestorMap[] batchAncestors(final int[] distinct) {
+        final AncestorMap[] maps = new AncestorMap[distinct.length];
+        if (this.labels != null) {
+            for (int i = 0; i < distinct.length; i++) maps[i] = this.labels.ancestors(distinct[i]);
+            return maps;
+        }
+        IntStream.range(0, distinct.length).parallel()
+                 .forEach(i -> maps[i] = this.engines.get().ancestors(distinct[i]));
+        return maps;
     }
 
 
-    /* Crude testing, taken from assignment specification */
+    /* Sorted distinct values. */
+    private static int[] distinct(int[] values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || sorted[n - 1] != sorted[i]) sorted[n++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+
+
+    /* Per assignment specification, throw index OOB exception for low/high vertex. */
+    private void validate(int v) {
+        int upperBound = this.G.V() - 1;
+        if (v < 0 || v > upperBound) {
+            String errMsg = String.format("Need vertex v; 0 <= v <= %d; got %d",
+                                          upperBound, v);
+            throw new IndexOutOfBoundsException(errMsg);
+        }
+    }
+
+
+    /* Validate each vertex in a group of query vertices. */
+    private void validate(Iterable<Integer> vertices) {
+        for (int v : vertices) validate(v);
+    }
+
+
+    /*
+     * Crude testing, taken from assignment specification. With --batch
+     * (and optionally --binary), stream pairs through SAPQueryStream
+     * instead, e.g. to replay a query log.
+     */
     public static void main(String[] args) {
         In in = new In(args[0]);
         Digraph G = new Digraph(in);
         SAP sap = new SAP(G);
+        if (args.length > 1 && BATCH_FLAG.equals(args[1])) {
+            boolean binary = args.length > 2 && BINARY_FLAG.equals(args[2]);
+            SAPQueryStream.run(sap, System.in, new BufferedOutputStream(System.out, 1 << 16), binary);
+            return;
+        }
         while (!StdIn.isEmpty()) {
             int v = StdIn.readInt();
             int w = StdIn.readInt();
-            int length = sap.length(v, w);
-            int ancestor = sap.ancestor(v, w);
-            StdOut.printf("length = %d, ancestor = %d\n", length, ancestor);
+            AncestralPath path = sap.query(v, w);
+            StdOut.printf("length = %d, ancestor = %d\n", path.length(), path.ancestor());
         }
     }
 
@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * Pipelined SAP queries over a stream of vertex pairs, for replaying
+ * query logs too long to answer one StdIn line at a time. Three stages
+ * overlap: the calling thread parses pairs into blocks; each block is
+ * answered on the common fork-join pool, one {@link SAP#query(int, int)}
+ * per pair (length and ancestor from the same search); and finished
+ * blocks are written, in input order, through one large buffer. At most
+ * a few blocks per worker are in flight, so memory stays bounded however
+ * long the stream.
+ *
+ * Text input is whitespace-separated vertex indices, as for SAP's main;
+ * binary input is big-endian 32-bit ints. Either way, consecutive values
+ * pair up, and each pair gets a "length = L, ancestor = A" output line.
+ *
+ * @author Vince Reuter
+ */
+final class SAPQueryStream {
+
+
+    // Pairs answered per parallel task, and buffer size for reading and writing
+    private static final int BLOCK_SIZE = 1 << 12;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte[] LENGTH = "length = ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ANCESTOR = ", ancestor = ".getBytes(StandardCharsets.US_ASCII);
+
+    private final SAP sap;
+    private final InputStream in;
+    private final boolean binary;
+
+    // Read buffer, with the unread bytes at position through limit - 1
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    // Text values read so far, to place a bad one
+    private long tokens;
+
+
+    private SAPQueryStream(SAP sap, InputStream in, boolean binary) {
+        this.sap = sap;
+        this.in = in;
+        this.binary = binary;
+    }
+
+
+    /**
+     * Answer every pair in a stream, writing one line per pair in input order.
+     *
+     * @param sap SAP to query
+     * @param in source of vertex pairs; read to its end, not closed
+     * @param out destination of results; flushed, not closed
+     * @param binary whether pairs are big-endian ints rather than text
+     * @throws IllegalArgumentException if the input isn't a whole number of
+     *         pairs of integers; results for the pairs before are written
+     * @throws IndexOutOfBoundsException if a vertex is out of range; likewise
+     * @throws UncheckedIOException if reading or writing fails
+     */
+    static void run(SAP sap, InputStream in, OutputStream out, boolean binary) {
+        new SAPQueryStream(sap, in, binary).pipe(out);
+    }
+
+
+    private void pipe(OutputStream out) {
+        int window = 2 * ForkJoinPool.getCommonPoolParallelism() + 2;
+        ArrayDeque<CompletableFuture<Block>> inFlight = new ArrayDeque<CompletableFuture<Block>>(window);
+        try {
+            RuntimeException failure = null;
+            while (failure == null) {
+                int[] pairs = new int[2 * BLOCK_SIZE];
+                int n = 0;
+                try {
+                    while (n < pairs.length && next(pairs, n)) n++;
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+                if (n % 2 == 1 && failure == null) {
+                    failure = new IllegalArgumentException("Odd number of vertices in input; last is unpaired");
+                }
+                final int[] block = pairs;
+                final int count = n / 2;
+                if (count > 0) inFlight.add(CompletableFuture.supplyAsync(() -> answer(block, count)));
+                if (n < pairs.length) break;
+                while (inFlight.size() >= window) write(inFlight.poll().join(), out);
+            }
+            while (!inFlight.isEmpty()) write(inFlight.poll().join(), out);
+            out.flush();
+            if (failure != null) throw failure;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+
+    /* Write a finished block; if it stopped at a bad pair, flush what came before and rethrow. */
+    private static void write(Block block, OutputStream out) throws IOException {
+        out.write(block.bytes, 0, block.size);
+        if (block.failure != null) {
+            out.flush();
+            throw block.failure;
+        }
+    }
+
+
+    /* Answer the first count pairs of a block, formatting the results as they come. */
+    private Block answer(int[] pairs, int count) {
+        Block block = new Block(count * 32);
+        try {
+            for (int i = 0; i < count; i++) {
+                AncestralPath path = this.sap.query(pairs[2 * i], pairs[2 * i + 1]);
+                block.append(LENGTH).append(path.length()).append(ANCESTOR).append(path.ancestor()).append('\n');
+            }
+        } catch (RuntimeException e) {
+            block.failure = e;
+        }
+        return block;
+    }
+
+
+    /* Read the next value into values[i]; false at end of input. */
+    private boolean next(int[] values, int i) {
+        return this.binary ? nextBinary(values, i) : nextText(values, i);
+    }
+
+
+    private boolean nextBinary(int[] values, int i) {
+        int value = 0;
+        for (int b = 0; b < 4; b++) {
+            if (!fill()) {
+                if (b == 0) return false;
+                throw new IllegalArgumentException("Binary input ends partway through an int");
+            }
+            value = (value << 8) | (this.buffer[this.position++] & 0xFF);
+        }
+        values[i] = value;
+        return true;
+    }
+
+
+    private boolean nextText(int[] values, int i) {
+        while (fill() && isSpace(this.buffer[this.position])) this.position++;
+        if (!fill()) return false;
+        this.tokens++;
+        boolean negative = this.buffer[this.position] == '-';
+        if (negative) this.position++;
+        long value = 0;
+        int digits = 0;
+        while (fill() && !isSpace(this.buffer[this.position])) {
+            int digit = this.buffer[this.position++] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Value " + this.tokens + " of the input isn't an integer");
+            }
+            if (value > Integer.MAX_VALUE) break;
+            value = 10 * value + digit;
+            digits++;
+        }
+        if (digits == 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Value " + this.tokens + " of the input isn't an int");
+        }
+        values[i] = (int) (negative ? -value : value);
+        return true;
+    }
+
+
+    /* Make sure there's an unread byte; false at end of input. */
+    private boolean fill() {
+        if (this.position < this.limit) return true;
+        try {
+            int n;
+            do {
+                n = this.in.read(this.buffer, 0, this.buffer.length);
+            } while (n == 0);
+            this.position = 0;
+            this.limit = Math.max(n, 0);
+            return n > 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+    }
+
+
+    /* One block's output as ASCII, plus the error that cut it short, if any. */
+    private static final class Block {
+
+        private byte[] bytes;
+        private int size;
+        private RuntimeException failure;
+
+        Block(int capacity) {this.bytes = new byte[capacity];}
+
+        Block append(byte[] text) {
+            ensure(text.length);
+            System.arraycopy(text, 0, this.bytes, this.size, text.length);
+            this.size += text.length;
+            return this;
+        }
+
+        Block append(char c) {
+            ensure(1);
+            this.bytes[this.size++] = (byte) c;
+            return this;
+        }
+
+        Block append(int value) {
+            ensure(11);
+            long rest = value;
+            if (rest < 0) {
+                this.bytes[this.size++] = '-';
+                rest = -rest;
+            }
+            int end = this.size + digits(rest);
+            for (int at = end - 1; at >= this.size; at--, rest /= 10) this.bytes[at] = (byte) ('0' + rest % 10);
+            this.size = end;
+            return this;
+        }
+
+        private static int digits(long value) {
+            int digits = 1;
+            for (long bound = 10; value >= bound && digits < 10; bound *= 10) digits++;
+            return digits;
+        }
+
+        private void ensure(int more) {
+            if (this.size + more > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(2 * this.bytes.length, this.size + more));
+            }
+        }
+
+    }
+
+
+}
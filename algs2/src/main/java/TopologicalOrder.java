@@ -0,0 +1,60 @@
+/**
+ * Topological order of a rooted DAG, hypernyms first, with the depth of
+ * each vertex: the length of the longest path from it up to the root.
+ * Depth strictly increases along every hypernym-to-hyponym edge, so a
+ * vertex can only be a hypernym of those deeper than it, which rules a
+ * pair out of an is-a query before any lookup. Both come free with the
+ * Kahn's algorithm pass that checks a graph is a rooted DAG, and are
+ * kept for precomputations that need hyponyms or hypernyms visited
+ * first, like {@link HypernymClosure}.
+ *
+ * @author Vince Reuter
+ */
+final class TopologicalOrder {
+
+
+    // Vertices, the root first and every one after all its hypernyms; and each one's depth
+    private final int[] order;
+    private final int[] depth;
+
+
+    /**
+     * Adopt an order found by peeling the graph from its leaves: every
+     * vertex before all its hypernyms, the root last.
+     *
+     * @param G rooted DAG, edges pointing to hypernyms
+     * @param hyponymsFirst every vertex of G, each before its hypernyms
+     */
+    TopologicalOrder(ImmutableDigraph G, int[] hyponymsFirst) {
+        int V = G.V();
+        int[] offsets = G.offsets();
+        int[] targets = G.targets();
+        this.order = new int[V];
+        for (int i = 0; i < V; i++) this.order[i] = hyponymsFirst[V - 1 - i];
+        this.depth = new int[V];
+        for (int i = 0; i < V; i++) {
+            int x = this.order[i];
+            for (int e = offsets[x]; e < offsets[x + 1]; e++) {
+                this.depth[x] = Math.max(this.depth[x], this.depth[targets[e]] + 1);
+            }
+        }
+    }
+
+
+    /** Number of vertices ordered. */
+    int V() {return this.order.length;}
+
+
+    /** The root, first in the order; -1 if the graph is empty. */
+    int root() {return this.order.length == 0 ? -1 : this.order[0];}
+
+
+    /** The i-th vertex in the order, hypernyms first. */
+    int vertex(int i) {return this.order[i];}
+
+
+    /** Length of the longest path from a vertex up to the root. */
+    int depth(int v) {return this.depth[v];}
+
+
+}
@@ -0,0 +1,50 @@
+/**
+ * Pair of values in which order doesn't matter: (a, b) equals (b, a)
+ * and both hash alike. Used to key symmetric queries, such as SAP
+ * length or distance between two nouns, to a single cache entry.
+ *
+ * @author Vince Reuter
+ * @param <T> type of paired values
+ */
+public final class UnorderedPair<T> {
+
+
+    private final T first;
+    private final T second;
+
+
+    /**
+     * Pair two (non-null) values.
+     *
+     * @param first one value
+     * @param second other value
+     */
+    public UnorderedPair(T first, T second) {
+        if (first == null || second == null) throw new NullPointerException("Null pair member");
+        this.first = first;
+        this.second = second;
+    }
+
+
+    /* Data accessors; order is as given to the constructor */
+    public T first() {return this.first;}
+    public T second() {return this.second;}
+
+
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof UnorderedPair)) return false;
+        UnorderedPair<?> other = (UnorderedPair<?>) o;
+        return (this.first.equals(other.first) && this.second.equals(other.second))
+                || (this.first.equals(other.second) && this.second.equals(other.first));
+    }
+
+
+    /* Symmetric in the two members, as equals requires. */
+    public int hashCode() {return this.first.hashCode() + this.second.hashCode();}
+
+
+    public String toString() {return "{" + this.first + ", " + this.second + "}";}
+
+
+}
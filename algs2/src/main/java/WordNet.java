@@ -1,14 +1,11 @@
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-
-import edu.princeton.cs.algs4.Digraph;
-import edu.princeton.cs.algs4.DirectedCycle;
-import edu.princeton.cs.algs4.In;
-
-// TODO: corner cases, docstrings, exceptions, problem description and info links.
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -18,6 +15,17 @@ import edu.princeton.cs.algs4.In;
  * (a set of synonyms that encompasses another). This
  * ADT uses a directed graph to represent WordNet.
  *
+ * An instance is immutable once constructed, and is safe for any
+ * number of threads to query at once without external locking. The
+ * lexicon, index and hypernym graph are shared, read-only data;
+ * the only per-query state is BFS scratch space, which SAP keeps
+ * per thread, and the optional query cache is itself thread-safe.
+ * The topological order and closure behind is-a queries are found on
+ * first use (the order is kept from validation, if there was one), are
+ * immutable, and are published through volatile fields.
+ * Updates (see {@link #apply(Patch)}) make a new WordNet and leave this
+ * one as it was, so a query never sees a half-applied patch.
+ *
  * @author Vince Reuter
  */
 public class WordNet {
@@ -25,9 +33,37 @@ public class WordNet {
 
     private static final String SYNSET_NOUNS_DELIMITER = " ";
 
-    private ArrayList<Synset> synsets;
-    private Map<String, Set<Integer>> synIdsByWord;
-    private Digraph G;
+    // Most synset IDs an error message lists
+    private static final int MAX_LISTED = 20;
+
+    // Lexicon: nouns and synsets indexed both ways, and synset glosses by ID,
+    // each decoded from its file mapping on demand (patched-in ones excepted)
+    private final NounIndex index;
+    private final List<String> glosses;
+
+    // Hypernym graph, its root (-1 if empty), and the single SAP engine that's shared by all queries
+    private final ImmutableDigraph G;
+    private final int root;
+    private final SAP sap;
+
+    // Nearest-noun search: down the hyponym graph, with one workspace per thread
+    private final ImmutableDigraph hyponyms;
+    private final ThreadLocal<NearestSynsetSearch> nearestEngines;
+
+    // Optional results of noun-pair queries; null if not caching
+    private final QueryCache<UnorderedPair<String>> cache;
+
+    // Locality order (see withLocalityOrder()): the number each synset goes
+    // by in the graph, index, labels and glosses above, and the synset ID
+    // that each of those numbers stands for; both null if synsets keep
+    // their file order. Synset IDs in the public API are always the file's.
+    private final int[] internalIds;
+    private final int[] externalIds;
+
+    // Topological order and depths, kept from validation (else found on first use);
+    // and compressed transitive closure of the graph for is-a queries, built on first use
+    private volatile TopologicalOrder topology;
+    private volatile HypernymClosure closure;
 
 
     /**
@@ -44,47 +80,288 @@ public class WordNet {
             throw new NullPointerException("At least one input file paths is null.");
         }
 
-        this.synIdsByWord = new HashMap<String, Set<Integer>>();
-        this.synsets = new ArrayList<Synset>();
-
-        /* Parse the synset words and definitions. */
-        int synsetID = 0;
-        In parser = new In(synsets);
-        SynsetLine synLine;
-        while (parser.hasNextLine()) {
-            synLine = new SynsetLine(parser.readLine());
-            this.synsets.add(new Synset(synLine.gloss(), synLine.nouns()));
-            // Update word lookup structure.
-            this.indexWords(synsetID, synLine.nouns());
-            synsetID++;
+        /* Parse the synset words, and locate (but don't decode) their definitions. */
+        ByteBuffer synsetBytes = WordNetParser.map(synsets);
+        List<WordNetParser.SynsetChunk> synsetChunks = WordNetParser.parseSynsets(synsetBytes);
+        int V = 0;
+        for (WordNetParser.SynsetChunk chunk : synsetChunks) {
+            for (int i = 0; i < chunk.synsetCount; i++) V = Math.max(V, chunk.synsetIds[i] + 1);
         }
+        int[] glossStarts = new int[V];
+        Arrays.fill(glossStarts, -1);
+        NounIndex.Builder index = new NounIndex.Builder(V);
+        for (WordNetParser.SynsetChunk chunk : synsetChunks) {
+            for (int i = 0; i < chunk.synsetCount; i++) {
+                int synId = chunk.synsetIds[i];
+                if (glossStarts[synId] != -1) {
+                    throw new IllegalArgumentException("Duplicate synset ID: " + synId);
+                }
+                glossStarts[synId] = chunk.glossStarts[i];
+            }
+            for (int i = 0; i < chunk.nounCount; i++) index.add(chunk.nounSynsets[i], chunk.nouns[i]);
+        }
+        for (int synId = 0; synId < V; synId++) {
+            if (glossStarts[synId] == -1) throw new IllegalArgumentException("Missing synset ID: " + synId);
+        }
+        this.index = index.build();
+        this.glosses = WordNetParser.glosses(synsetBytes, glossStarts);
 
         /* Connect the synsets by hypernym relationships. */
         // After parsing synsets, we know size.
-        this.G = new Digraph(this.synsets.size());
-        parser = new In(hypernyms);
-        HypernymLine hypLine;
-        while (parser.hasNextLine()) {
-            hypLine = new HypernymLine(parser.readLine());
-            int synId = hypLine.id();
-            for (int hypId : hypLine.hypernyms()) {
-                this.G.addEdge(synId, hypId);
+        ImmutableDigraph.Builder hypernymGraph = new ImmutableDigraph.Builder(V);
+        for (WordNetParser.EdgeChunk chunk : WordNetParser.parseHypernyms(hypernyms)) {
+            for (int i = 0; i < chunk.edgeCount; i++) {
+                hypernymGraph.addEdge(chunk.tails[i], chunk.heads[i]);
             }
         }
 
+        // Freeze the graph once; queries share it instead of copying it.
+        this.G = hypernymGraph.build();
+
         // Per assignment specification, IllegalArgumentException if not a rooted DAG.
-        this.checkRootDAG();
+        this.hyponyms = this.G.reverse();
+        this.topology = checkRootDAG(this.G, this.hyponyms);
+        this.root = this.topology.root();
+
+        this.sap = new SAP(this.G);
+        this.nearestEngines = nearestEngines(this.hyponyms);
+        this.cache = null;
+        this.internalIds = null;
+        this.externalIds = null;
+
+    }
+
+
+    /* Adopt already-validated data, e.g. from a snapshot. */
+    private WordNet(NounIndex index, List<String> glosses, ImmutableDigraph G,
+                    AncestorLabels labels, int[] externalIds) {
+        this.index = index;
+        this.glosses = glosses;
+        this.G = G;
+        this.root = root(G);
+        this.sap = labels == null ? new SAP(G) : new SAP(G).withLabels(labels);
+        this.hyponyms = G.reverse();
+        this.nearestEngines = nearestEngines(this.hyponyms);
+        this.cache = null;
+        this.internalIds = inverse(externalIds);
+        this.externalIds = externalIds;
+    }
+
+
+    /**
+     * Load a WordNet from a snapshot written by {@link #save(String)}.
+     * The file is memory-mapped and nothing is parsed or validated
+     * again; the index's arrays are copied out in bulk, while nouns are
+     * looked up and glosses decoded in the mapping, on demand. If the
+     * snapshot was saved with ancestor labels, the loaded WordNet answers
+     * queries from them, and if it was saved in locality order, it's
+     * loaded in that order.
+     *
+     * @param snapshot path to snapshot file
+     * @return WordNet with the snapshot's lexicon and hypernym graph
+     * @throws IllegalArgumentException if the file isn't a WordNet snapshot
+     * @throws java.io.UncheckedIOException if the file can't be read
+     */
+    public static WordNet load(String snapshot) {
+        if (snapshot == null) throw new NullPointerException("Null snapshot path");
+        WordNetSnapshot.Mapped mapped = WordNetSnapshot.read(snapshot);
+        return new WordNet(mapped.index(), mapped.glosses(), mapped.graph(), mapped.labels(), mapped.externalIds());
+    }
+
+
+    /**
+     * Compile this (already validated) WordNet into a binary snapshot
+     * file, for fast loading with {@link #load(String)}. Ancestor labels,
+     * if this WordNet has them, are saved too, as is the locality order.
+     *
+     * @param snapshot path to snapshot file, replaced in one step if present;
+     *        that may be the file this WordNet was loaded from
+     * @throws java.io.UncheckedIOException if the file can't be written
+     */
+    public void save(String snapshot) {
+        if (snapshot == null) throw new NullPointerException("Null snapshot path");
+        WordNetSnapshot.write(snapshot, this.index, this.glosses, this.G, this.sap.labels(), this.externalIds);
+    }
+
+
+    /* Share another WordNet's data, querying through the given SAP and cache. */
+    private WordNet(WordNet base, SAP sap, QueryCache<UnorderedPair<String>> cache) {
+        this.index = base.index;
+        this.glosses = base.glosses;
+        this.G = base.G;
+        this.root = base.root;
+        this.sap = sap;
+        this.hyponyms = base.hyponyms;
+        this.nearestEngines = base.nearestEngines;
+        this.cache = cache;
+        this.internalIds = base.internalIds;
+        this.externalIds = base.externalIds;
+        this.topology = base.topology;
+        this.closure = base.closure;
+    }
+
+
+    /* Adopt patched or renumbered data, already validated. */
+    private WordNet(NounIndex index, List<String> glosses, ImmutableDigraph G, ImmutableDigraph hyponyms,
+                    int root, SAP sap, QueryCache<UnorderedPair<String>> cache, int[] externalIds) {
+        this.index = index;
+        this.glosses = glosses;
+        this.G = G;
+        this.root = root;
+        this.sap = sap;
+        this.hyponyms = hyponyms;
+        this.nearestEngines = nearestEngines(hyponyms);
+        this.cache = cache;
+        this.internalIds = inverse(externalIds);
+        this.externalIds = externalIds;
+    }
+
+
+    /**
+     * Apply a batch of new synsets and hypernym edges, without re-reading
+     * or revalidating the rest of WordNet. Only the old root and the new
+     * synsets can be roots afterwards, and a new cycle must run through
+     * a new edge, so the rooted DAG check looks only at the ancestors of
+     * the new edges' heads. Existing graph, index and label arrays are
+     * copied with the additions merged in, and of the ancestor labels (if
+     * any), only those of the new edges' descendants are recomputed.
+     *
+     * This WordNet is left unchanged (queries running on it carry on
+     * undisturbed), and the patched one shares nothing mutable with it;
+     * publish it to readers through a volatile reference, as
+     * {@link LiveWordNet} does. Views keep their kind: a labeled WordNet
+     * gives a labeled one, a caching one a fresh cache of the same size
+     * and policy, and one in locality order stays in it, with the new
+     * synsets numbered after the rest.
+     *
+     * @param patch synsets and edges to add
+     * @return WordNet with the patch applied
+     * @throws IllegalArgumentException if new synset IDs don't continue the
+     *         existing ones without gaps or repeats, an edge joins an unknown
+     *         synset, or the result isn't a rooted DAG
+     */
+    public WordNet apply(Patch patch) {
+        if (patch == null) throw new NullPointerException("Null patch");
+        int oldV = this.G.V();
+        int V = oldV + patch.synsetCount;
+
+        /* New synset IDs must continue the existing ones, with no gaps or repeats. */
+        String[] addedGlosses = new String[patch.synsetCount];
+        for (int i = 0; i < patch.synsetCount; i++) {
+            int synId = patch.synsetIds[i];
+            if (synId < oldV || synId >= V) {
+                throw new IllegalArgumentException(
+                        String.format("New synset ID %d is not between %d and %d", synId, oldV, V - 1));
+            }
+            if (addedGlosses[synId - oldV] != null) throw new IllegalArgumentException("Duplicate synset ID: " + synId);
+            addedGlosses[synId - oldV] = patch.glosses[i];
+        }
+        for (int e = 0; e < patch.edgeCount; e++) {
+            checkSynset(patch.tails[e], V);
+            checkSynset(patch.heads[e], V);
+        }
+
+        /* In locality order, existing synsets are renumbered; new ones keep their IDs, after them. */
+        int[] tails = internal(patch.tails, patch.edgeCount);
+        int[] heads = internal(patch.heads, patch.edgeCount);
+        int[] externalIds = null;
+        if (this.externalIds != null) {
+            externalIds = Arrays.copyOf(this.externalIds, V);
+            for (int synId = oldV; synId < V; synId++) externalIds[synId] = synId;
+        }
+
+        /* Extend the graph, and check the region the patch could have broken. */
+        ImmutableDigraph G = this.G.withEdges(V, tails, heads, patch.edgeCount);
+        ImmutableDigraph hyponyms = G.reverse();
+        int root = checkRootDAG(G, hyponyms, this.root, oldV, heads, patch.edgeCount, externalIds);
+
+        NounIndex index = this.index.with(V, internal(patch.nounSynsets, patch.nounCount), patch.nouns, patch.nounCount);
+        SAP sap = new SAP(G);
+        AncestorLabels labels = this.sap.labels();
+        if (labels != null) sap = sap.withLabels(labels.update(G, hyponyms, tails, patch.edgeCount));
+        return new WordNet(index, AppendedList.of(this.glosses, addedGlosses), G, hyponyms, root, sap,
+                           freshCache(), externalIds);
+    }
+
+
+    /**
+     * Get a view of this WordNet that caches results of noun-pair
+     * queries. Distance and nearest hypernym are symmetric, so the
+     * pairs (a, b) and (b, a) share an entry. The view shares all
+     * lexicon and graph data with this one.
+     *
+     * @param capacity maximum number of cached noun pairs
+     * @param policy how to choose a pair to evict when full
+     * @return caching view of this WordNet
+     */
+    public WordNet withCache(int capacity, QueryCache.Policy policy) {
+        return new WordNet(this, this.sap, new QueryCache<UnorderedPair<String>>(capacity, policy));
+    }
 
+
+    /**
+     * Get a view of this WordNet that answers queries from precomputed
+     * ancestor labels (see {@link SAP#withLabels()}): each synset's
+     * hypernyms with their distances, so that a query merges the labels
+     * of the two words' synsets instead of searching the graph. Labels
+     * are built once, here, and are kept by {@link #save(String)}.
+     *
+     * @return labeled view of this WordNet, with this one's cache if any
+     */
+    public WordNet withLabels() {
+        return new WordNet(this, this.sap.withLabels(), this.cache);
     }
 
 
+    /**
+     * Get a view of this WordNet with its synsets renumbered internally
+     * for locality: breadth first down from the root, so that the upper
+     * levels of the hierarchy, which nearly every search climbs through,
+     * are packed together at the front of the graph and search arrays,
+     * and each synset's hyponyms are numbered side by side. Synset IDs
+     * in this class's API (glosses, ancestors, patches) are still those
+     * of the synsets file. Results are the same, except that where two
+     * common hypernyms are equally near, {@link #sap(String, String)}
+     * may pick the other one. Ancestor labels, if any, are renumbered
+     * rather than rebuilt, and the order is kept by {@link #save(String)}.
+     *
+     * @return renumbered view of this WordNet, with a fresh cache if it caches
+     */
+    public WordNet withLocalityOrder() {
+        int V = this.G.V();
+        final int[] order = breadthFirstOrder(this.hyponyms, this.root);
+        int[] positions = inverse(order);
+        ImmutableDigraph G = this.G.permuted(positions);
+        SAP sap = new SAP(G);
+        AncestorLabels labels = this.sap.labels();
+        if (labels != null) sap = sap.withLabels(labels.permuted(positions));
+        int[] externalIds = new int[V];
+        for (int v = 0; v < V; v++) externalIds[v] = lookup(this.externalIds, order[v]);
+        final List<String> glosses = this.glosses;
+        List<String> renumbered = new AbstractList<String>() {
+            public int size() {return order.length;}
+            public String get(int v) {return glosses.get(order[v]);}
+        };
+        return new WordNet(this.index.permuted(positions), renumbered, G, G.reverse(),
+                           this.root == -1 ? -1 : positions[this.root], sap, freshCache(), externalIds);
+    }
+
+
+    /**
+     * Get the cache in front of noun-pair queries, e.g. for its metrics.
+     *
+     * @return query result cache; null if not caching
+     */
+    public QueryCache<UnorderedPair<String>> cache() {return this.cache;}
+
+
     /**
      * Iterate over WordNet's words.
      *
      * @return iterable over WordNet's words
      */
     public Iterable<String> nouns() {
-        return this.synIdsByWord.keySet();
+        return this.index.nouns();
     }
 
 
@@ -95,7 +372,39 @@ public class WordNet {
      * @return whether WordNet knows given word
      */
     public boolean isNoun(String word) {
-        return this.synIdsByWord.containsKey(word);
+        return this.index.id(word) != -1;
+    }
+
+
+    /**
+     * Get a synset's gloss (its definition). Glosses stay in the synsets
+     * file (or snapshot) mapping, off the heap, until they're asked for.
+     *
+     * @param synset synset ID
+     * @return gloss of the synset
+     * @throws IllegalArgumentException unless the synset ID is in range
+     */
+    public String gloss(int synset) {
+        checkSynset(synset, this.G.V());
+        return this.glosses.get(lookup(this.internalIds, synset));
+    }
+
+
+    /**
+     * Get the gloss of each sense of a word, i.e. of each synset it's in.
+     *
+     * @param noun query word
+     * @return glosses of the word's synsets, in synset ID order
+     * @throws IllegalArgumentException if WordNet doesn't know the word
+     */
+    public List<String> glosses(String noun) {
+        List<Integer> synsets = synsetsOf(noun);
+        int[] synIds = new int[synsets.size()];
+        for (int i = 0; i < synIds.length; i++) synIds[i] = lookup(this.externalIds, synsets.get(i));
+        Arrays.sort(synIds);
+        String[] glosses = new String[synIds.length];
+        for (int i = 0; i < glosses.length; i++) glosses[i] = this.glosses.get(lookup(this.internalIds, synIds[i]));
+        return Collections.unmodifiableList(Arrays.asList(glosses));
     }
 
 
@@ -108,11 +417,56 @@ public class WordNet {
      * @throws IllegalArgumentException WordNet doesn't know both words
      */
     public int distance(String nounA, String nounB) {
-        validateWord(nounA);
-        validateWord(nounB);
-        Iterable<Integer> aSynIds = this.synIdsByWord.get(nounA);
-        Iterable<Integer> bSynIds = this.synIdsByWord.get(nounB);
-        return new SAP(this.G).length(aSynIds, bSynIds);
+        long start = QueryStats.start();
+        try {
+            return query(nounA, nounB).length();
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.WORDNET_DISTANCE, start);
+        }
+    }
+
+
+    /**
+     * Determine the distance between two words, but only if it's at most
+     * maxDistance; see {@link SAP#boundedLength(Iterable, Iterable, int)}.
+     * This is the cheap way to ask whether two words are within a few
+     * hops, since far pairs are given up on early.
+     *
+     * @param nounA first word
+     * @param nounB other word
+     * @param maxDistance largest distance of interest
+     * @return distance between the words; {@link SAP#FARTHER_THAN_BOUND}
+     *         if that's more than maxDistance
+     * @throws IllegalArgumentException WordNet doesn't know both words, or maxDistance is negative
+     */
+    public int boundedDistance(String nounA, String nounB, int maxDistance) {
+        return boundedDistance(nounA, nounB, maxDistance, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * Like {@link #boundedDistance(String, String, int)}, but also give up
+     * once the time budget is spent, for a hard latency limit; see
+     * {@link SAP#boundedLength(Iterable, Iterable, int, long, TimeUnit)}.
+     * Bounded queries bypass the cache.
+     *
+     * @param nounA first word
+     * @param nounB other word
+     * @param maxDistance largest distance of interest
+     * @param budget time allowed for the search
+     * @param unit unit of the budget
+     * @return distance between the words; {@link SAP#FARTHER_THAN_BOUND}
+     *         if that's more than maxDistance; {@link SAP#BUDGET_EXCEEDED}
+     *         if time ran out first
+     * @throws IllegalArgumentException WordNet doesn't know both words, or a bound is negative
+     */
+    public int boundedDistance(String nounA, String nounB, int maxDistance, long budget, TimeUnit unit) {
+        long start = QueryStats.start();
+        try {
+            return this.sap.boundedLength(synsetsOf(nounA), synsetsOf(nounB), maxDistance, budget, unit);
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.WORDNET_BOUNDED_DISTANCE, start);
+        }
     }
 
 
@@ -125,49 +479,508 @@ public class WordNet {
      * @throws IllegalArgumentException WordNet doesn't know both words
      */
     public String sap(String nounA, String nounB) {
-        validateWord(nounA);
-        validateWord(nounB);
-        Iterable<Integer> aSynIds = this.synIdsByWord.get(nounA);
-        Iterable<Integer> bSynIds = this.synIdsByWord.get(nounA);
-        int ancestorHypernymID = new SAP(this.G).ancestor(aSynIds, bSynIds);
-        return String.join(SYNSET_NOUNS_DELIMITER,
-                           this.synsets.get(ancestorHypernymID).words());
-    }
-
-
-    /* Throw IllegalArgumentException if input doesn't represent rooted DAG. */
-    private void checkRootDAG() {
-        int root = -1;
-        for (int v = 0; v < G.V(); v++) {
-            if (G.outdegree(v) == 0) {
-                if (root != -1) {
-                    String errMsg = String.format("At least two root candidates: %d and %d", root, v);
-                    throw new IllegalArgumentException(errMsg);
+        long start = QueryStats.start();
+        try {
+            int ancestorHypernymID = query(nounA, nounB).ancestor();
+            return String.join(SYNSET_NOUNS_DELIMITER, this.index.words(ancestorHypernymID));
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.WORDNET_SAP, start);
+        }
+    }
+
+
+    /**
+     * Find every hypernym of a word's synsets (those synsets included),
+     * with its distance from the nearest of them.
+     *
+     * @param noun query word
+     * @return hypernym synset IDs and distances
+     * @throws IllegalArgumentException WordNet doesn't know the word
+     */
+    public AncestorMap ancestors(String noun) {
+        long start = QueryStats.start();
+        try {
+            AncestorMap ancestors = this.sap.ancestors(synsetsOf(noun));
+            return this.externalIds == null ? ancestors : renumbered(ancestors, this.externalIds);
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.WORDNET_ANCESTORS, start);
+        }
+    }
+
+
+    /**
+     * Determine whether one word is a kind of another: whether a synset of
+     * nounA is a hypernym, direct or not, of a synset of nounB. Sharing a
+     * synset doesn't count, so synonyms aren't hypernyms of each other.
+     * This is answered from a compressed transitive closure of the
+     * hypernym graph (built on the first is-a query, then kept), by a
+     * binary search per pair of senses, with no graph search at all; a
+     * pair is ruled out first if its hypernym isn't the shallower sense.
+     *
+     * @param nounA candidate hypernym
+     * @param nounB candidate hyponym
+     * @return whether nounA is a hypernym of nounB
+     * @throws IllegalArgumentException WordNet doesn't know both words
+     */
+    public boolean isHypernymOf(String nounA, String nounB) {
+        long start = QueryStats.start();
+        try {
+            List<Integer> aSynIds = synsetsOf(nounA);
+            List<Integer> bSynIds = synsetsOf(nounB);
+            TopologicalOrder topology = topology();
+            HypernymClosure closure = closure();
+            for (int a : aSynIds) {
+                for (int b : bSynIds) {
+                    // Only a shallower synset can be a hypernym.
+                    if (topology.depth(a) < topology.depth(b) && closure.reaches(a, b)) return true;
+                }
+            }
+            return false;
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.WORDNET_IS_HYPERNYM, start);
+        }
+    }
+
+
+    /**
+     * Find every hypernym, direct or not, of a word's synsets. Unlike
+     * {@link #ancestors(String)}, this gives no distances and leaves out
+     * the word's own synsets (unless one is a hypernym of another), but
+     * it's read from the same closure as {@link #isHypernymOf(String, String)},
+     * in time proportional to the number of hypernyms, with no graph search.
+     *
+     * @param noun query word
+     * @return hypernym synset IDs, ascending
+     * @throws IllegalArgumentException WordNet doesn't know the word
+     */
+    public int[] hypernyms(String noun) {
+        long start = QueryStats.start();
+        try {
+            int[] hypernyms = closure().ancestors(synsetsOf(noun));
+            if (this.externalIds == null) return hypernyms;
+            for (int i = 0; i < hypernyms.length; i++) hypernyms[i] = this.externalIds[hypernyms[i]];
+            Arrays.sort(hypernyms);
+            return hypernyms;
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.WORDNET_HYPERNYMS, start);
+        }
+    }
+
+
+    /**
+     * Find the k nouns nearest to a word by {@link #distance(String, String)}.
+     * The search climbs from the word's synsets to their hypernyms, then
+     * walks down the hyponyms of those in increasing distance order, and
+     * stops as soon as k nouns are settled, so its cost depends on k and
+     * on how crowded the word's neighbourhood is rather than on the size
+     * of the vocabulary. Nouns at the k-th distance that don't fit are
+     * left out; which ones make it is deterministic but arbitrary.
+     *
+     * @param noun query word, which is never among the results
+     * @param k number of nouns to find
+     * @return up to k nouns with their distances, nearest first;
+     *         fewer only if fewer nouns are connected to the word
+     * @throws IllegalArgumentException WordNet doesn't know the word, or k is negative
+     */
+    public Map<String, Integer> nearest(String noun, int k) {
+        long start = QueryStats.start();
+        try {
+            if (k < 0) throw new IllegalArgumentException("Number of nearest nouns must be nonnegative: " + k);
+            List<Integer> sources = synsetsOf(noun);
+            Map<String, Integer> nearest = new LinkedHashMap<String, Integer>();
+            if (k == 0) return nearest;
+            NearestSynsetSearch search = this.nearestEngines.get();
+            search.start(this.sap.ancestors(sources));
+            for (int synset = search.next(); synset != -1; synset = search.next()) {
+                // A noun is settled with its first (nearest) synset.
+                for (String word : this.index.words(synset)) {
+                    if (word.equals(noun) || nearest.containsKey(word)) continue;
+                    nearest.put(word, search.distance());
+                    if (nearest.size() == k) {
+                        search.finish(true);
+                        return nearest;
+                    }
+                }
+            }
+            search.finish(false);
+            return nearest;
+        } finally {
+            if (QueryStats.ENABLED) QueryStats.record(QueryStats.Operation.WORDNET_NEAREST, start);
+        }
+    }
+
+
+    /* Shortest ancestral path between the synsets of two words, via the cache if any. */
+    private AncestralPath query(String nounA, String nounB) {
+        Iterable<Integer> aSynIds = synsetsOf(nounA);
+        Iterable<Integer> bSynIds = synsetsOf(nounB);
+        UnorderedPair<String> key = null;
+        if (this.cache != null) {
+            key = new UnorderedPair<String>(nounA, nounB);
+            AncestralPath cached = this.cache.get(key);
+            if (cached != null) return cached;
+        }
+        AncestralPath result = this.sap.query(aSynIds, bSynIds);
+        if (key != null) this.cache.put(key, result);
+        return result;
+    }
+
+
+    /*
+     * Throw IllegalArgumentException if input doesn't represent rooted DAG,
+     * naming the extra roots or the synsets on cycles; return its
+     * topological order. One iterative pass of Kahn's algorithm peels
+     * synsets with no hyponyms left, so a deep graph can't overflow the
+     * stack, and the order it peels them in is kept.
+     */
+    private static TopologicalOrder checkRootDAG(ImmutableDigraph G, ImmutableDigraph hyponyms) {
+        int V = G.V();
+        int[] roots = new int[V];
+        int rootCount = 0;
+        for (int v = 0; v < V; v++) if (G.outdegree(v) == 0) roots[rootCount++] = v;
+        if (rootCount > 1) {
+            throw new IllegalArgumentException(String.format(
+                    "%d root candidates: %s", rootCount, synsetList(Arrays.copyOf(roots, rootCount), null)));
+        }
+        boolean[] inRegion = new boolean[V];
+        int[] region = new int[V];
+        for (int v = 0; v < V; v++) {
+            inRegion[v] = true;
+            region[v] = v;
+        }
+        return new TopologicalOrder(G, peelAcyclic(G, hyponyms, inRegion, region, V, null));
+    }
+
+
+    /*
+     * Incremental checkRootDAG, after edges (and vertices from oldV up) were
+     * added to a rooted DAG with the given root: only that root and the new
+     * vertices can be roots now, and since any new cycle includes a new edge
+     * t->h, with t reachable from h, it lies among the ancestors of the new
+     * edges' heads. Those are peeled with Kahn's algorithm, from both ends,
+     * so that what's left is the cycles. Return the new root.
+     */
+    private static int checkRootDAG(ImmutableDigraph G, ImmutableDigraph hyponyms,
+                                    int oldRoot, int oldV, int[] heads, int count, int[] externalIds) {
+        int root = oldRoot != -1 && G.outdegree(oldRoot) == 0 ? oldRoot : -1;
+        for (int v = oldV; v < G.V(); v++) {
+            if (G.outdegree(v) != 0) continue;
+            if (root != -1) {
+                String errMsg = String.format("At least two root candidates: %d and %d",
+                                              lookup(externalIds, root), v);
+                throw new IllegalArgumentException(errMsg);
+            }
+            root = v;
+        }
+
+        /* The region: ancestors of the new edges' heads. */
+        int[] offsets = G.offsets();
+        int[] targets = G.targets();
+        boolean[] inRegion = new boolean[G.V()];
+        int[] region = new int[G.V()];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (!inRegion[heads[i]]) {
+                inRegion[heads[i]] = true;
+                region[n++] = heads[i];
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            for (int e = offsets[region[i]]; e < offsets[region[i] + 1]; e++) {
+                if (!inRegion[targets[e]]) {
+                    inRegion[targets[e]] = true;
+                    region[n++] = targets[e];
                 }
-                root = v;
             }
         }
-        if (new DirectedCycle(this.G).hasCycle()) throw new IllegalArgumentException("Cyclic digraph");
+
+        peelAcyclic(G, hyponyms, inRegion, region, n, externalIds);
+        return root;
+    }
+
+
+    /*
+     * Peel the first n synsets of a region with Kahn's algorithm: those with
+     * no hyponyms left in it, then, if some are stuck, those with no
+     * hypernyms left; only cycles can't be peeled either way. Return the
+     * region in the first peeling's order, each synset before its hypernyms,
+     * or throw IllegalArgumentException naming the synsets on cycles.
+     */
+    private static int[] peelAcyclic(ImmutableDigraph G, ImmutableDigraph hyponyms,
+                                     boolean[] inRegion, int[] region, int n, int[] externalIds) {
+        int[] offsets = G.offsets();
+        int[] targets = G.targets();
+        int[] degree = new int[G.V()];
+        int[] peeled = new int[n];
+        int left = n - peel(inRegion, region, n, degree, peeled, offsets, targets, hyponyms.offsets(), hyponyms.targets());
+        if (left == 0) return peeled;
+        left -= peel(inRegion, region, n, degree, peeled, hyponyms.offsets(), hyponyms.targets(), offsets, targets);
+        int[] cyclic = new int[left];
+        for (int i = 0, j = 0; i < n; i++) if (inRegion[region[i]]) cyclic[j++] = region[i];
+        throw new IllegalArgumentException("Cyclic digraph: cycle among synsets " + synsetList(cyclic, externalIds));
+    }
+
+
+    /* Synset IDs for an error message, translated by a renumbering if any, sorted, and cut short if many. */
+    private static String synsetList(int[] synIds, int[] externalIds) {
+        for (int i = 0; i < synIds.length; i++) synIds[i] = lookup(externalIds, synIds[i]);
+        Arrays.sort(synIds);
+        if (synIds.length <= MAX_LISTED) return Arrays.toString(synIds);
+        String listed = Arrays.toString(Arrays.copyOf(synIds, MAX_LISTED));
+        return String.format("%s, ...] (%d in all)", listed.substring(0, listed.length() - 1), synIds.length);
+    }
+
+
+    /*
+     * One direction of Kahn's algorithm over the region's vertices that are
+     * still in it: remove those no remaining edge enters (following the
+     * "in" adjacency), then any left without one, and so on. Removed
+     * vertices leave the region; return how many there were.
+     */
+    private static int peel(boolean[] inRegion, int[] region, int n, int[] degree, int[] peeled,
+                            int[] outOffsets, int[] outTargets, int[] inOffsets, int[] inTargets) {
+        for (int i = 0; i < n; i++) {
+            int x = region[i];
+            degree[x] = 0;
+            if (!inRegion[x]) continue;
+            for (int e = inOffsets[x]; e < inOffsets[x + 1]; e++) if (inRegion[inTargets[e]]) degree[x]++;
+        }
+        int count = 0;
+        for (int i = 0; i < n; i++) if (inRegion[region[i]] && degree[region[i]] == 0) peeled[count++] = region[i];
+        for (int i = 0; i < count; i++) {
+            int x = peeled[i];
+            inRegion[x] = false;
+            for (int e = outOffsets[x]; e < outOffsets[x + 1]; e++) {
+                int y = outTargets[e];
+                if (inRegion[y] && --degree[y] == 0) peeled[count++] = y;
+            }
+        }
+        return count;
+    }
+
+
+    /* Topological order of the graph, if it wasn't kept from validation; racing threads may each find one. */
+    private TopologicalOrder topology() {
+        TopologicalOrder topology = this.topology;
+        if (topology == null) this.topology = topology = checkRootDAG(this.G, this.hyponyms);
+        return topology;
     }
 
 
-    /* Throw IllegalArgumentException if WordNet doesn't know given word. */
-    private void validateWord(String word) {
-        if (this.isNoun(word)) return;
+    /* Closure of the graph, built by the first query that needs it; likewise. */
+    private HypernymClosure closure() {
+        HypernymClosure closure = this.closure;
+        if (closure == null) this.closure = closure = HypernymClosure.build(this.G, this.hyponyms, topology());
+        return closure;
+    }
+
+
+    /* Fresh cache with this one's capacity and policy, for a changed WordNet; null if not caching. */
+    private QueryCache<UnorderedPair<String>> freshCache() {
+        return this.cache == null ? null
+                : new QueryCache<UnorderedPair<String>>(this.cache.capacity(), this.cache.policy());
+    }
+
+
+    /* Internal numbers of the given synset IDs, new ones (past the mapping) unchanged. */
+    private int[] internal(int[] synIds, int count) {
+        if (this.internalIds == null) return synIds;
+        int[] numbers = new int[count];
+        for (int i = 0; i < count; i++) numbers[i] = lookup(this.internalIds, synIds[i]);
+        return numbers;
+    }
+
+
+    /* Look a number up in a renumbering (either way); unchanged if there's none, or it's past the end. */
+    private static int lookup(int[] ids, int v) {
+        return ids == null || v >= ids.length ? v : ids[v];
+    }
+
+
+    /* Inverse of a permutation; null for none. */
+    private static int[] inverse(int[] permutation) {
+        if (permutation == null) return null;
+        int[] inverse = new int[permutation.length];
+        for (int i = 0; i < permutation.length; i++) inverse[permutation[i]] = i;
+        return inverse;
+    }
+
+
+    /*
+     * Vertices of a rooted DAG in breadth-first order down from the root:
+     * each vertex at its shortest depth, and the hyponyms of each vertex
+     * consecutive, in the order of their parents.
+     */
+    private static int[] breadthFirstOrder(ImmutableDigraph hyponyms, int root) {
+        int V = hyponyms.V();
+        int[] order = new int[V];
+        if (root == -1) return order;
+        int[] offsets = hyponyms.offsets();
+        int[] targets = hyponyms.targets();
+        boolean[] marked = new boolean[V];
+        marked[root] = true;
+        order[0] = root;
+        for (int head = 0, tail = 1; head < tail; head++) {
+            for (int e = offsets[order[head]]; e < offsets[order[head] + 1]; e++) {
+                int y = targets[e];
+                if (!marked[y]) {
+                    marked[y] = true;
+                    order[tail++] = y;
+                }
+            }
+        }
+        return order;
+    }
+
+
+    /* Ancestor map with its vertices renumbered, re-sorted by their new numbers. */
+    private static AncestorMap renumbered(AncestorMap map, int[] ids) {
+        int n = map.size();
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) packed[i] = ((long) ids[map.vertex(i)] << 32) | map.distance(i);
+        Arrays.sort(packed);
+        int[] vertices = new int[n];
+        int[] distances = new int[n];
+        for (int i = 0; i < n; i++) {
+            vertices[i] = (int) (packed[i] >>> 32);
+            distances[i] = (int) packed[i];
+        }
+        return new AncestorMap(vertices, distances);
+    }
+
+
+    /* Throw IllegalArgumentException unless the synset ID is between 0 and V - 1. */
+    private static void checkSynset(int synId, int V) {
+        if (synId < 0 || synId >= V) {
+            throw new IllegalArgumentException(String.format("synset %d is not between 0 and %d", synId, V - 1));
+        }
+    }
+
+
+    /* The single vertex with no hypernyms, of a graph already known to be a rooted DAG; -1 if empty. */
+    private static int root(ImmutableDigraph G) {
+        for (int v = 0; v < G.V(); v++) if (G.outdegree(v) == 0) return v;
+        return -1;
+    }
+
+
+    /* One reusable nearest-noun search workspace per querying thread. */
+    private static ThreadLocal<NearestSynsetSearch> nearestEngines(final ImmutableDigraph hyponyms) {
+        return new ThreadLocal<NearestSynsetSearch>() {
+            protected NearestSynsetSearch initialValue() {return new NearestSynsetSearch(hyponyms);}
+        };
+    }
+
+
+    /* Synset IDs of a word; IllegalArgumentException if WordNet doesn't know it. */
+    private List<Integer> synsetsOf(String word) {
+        int id = this.index.id(word);
+        if (id != -1) return this.index.synsets(id);
         throw new IllegalArgumentException(
                 String.format("WordNet doesn't know about '%s'", word)
         );
     }
 
 
-    /* Update mapping from word to collection of its synset member IDs. */
-    private void indexWords(int synId, String[] words) {
-        for (String w : words) {
-            if (!this.synIdsByWord.containsKey(w)) {
-                this.synIdsByWord.put(w, new HashSet<Integer>());
+    /**
+     * A batch of new synsets and hypernym edges, for {@link WordNet#apply(Patch)}.
+     * New synsets take the IDs after the existing ones; edges may join any
+     * synsets, old or new. A patch can be applied any number of times, to
+     * any WordNet, and isn't safe to fill in from concurrent threads.
+     */
+    public static final class Patch {
+
+        private int[] synsetIds = new int[8];
+        private String[] glosses = new String[8];
+        private int synsetCount;
+
+        private int[] nounSynsets = new int[8];
+        private String[] nouns = new String[8];
+        private int nounCount;
+
+        private int[] tails = new int[8];
+        private int[] heads = new int[8];
+        private int edgeCount;
+
+        /**
+         * Add a synset, with the fields of a line of the synsets file.
+         *
+         * @param id synset ID
+         * @param nouns space-separated nouns of the synset
+         * @param gloss synset's definition
+         * @return this patch
+         */
+        public Patch addSynset(int id, String nouns, String gloss) {
+            if (nouns == null || gloss == null) throw new NullPointerException("Null synset nouns or gloss");
+            if (this.synsetCount == this.synsetIds.length) {
+                this.synsetIds = Arrays.copyOf(this.synsetIds, 2 * this.synsetCount);
+                this.glosses = Arrays.copyOf(this.glosses, 2 * this.synsetCount);
+            }
+            this.synsetIds[this.synsetCount] = id;
+            this.glosses[this.synsetCount++] = gloss;
+            for (String noun : nouns.split(SYNSET_NOUNS_DELIMITER)) {
+                if (noun.isEmpty()) continue;
+                if (this.nounCount == this.nouns.length) {
+                    this.nounSynsets = Arrays.copyOf(this.nounSynsets, 2 * this.nounCount);
+                    this.nouns = Arrays.copyOf(this.nouns, 2 * this.nounCount);
+                }
+                this.nounSynsets[this.nounCount] = id;
+                this.nouns[this.nounCount++] = noun;
+            }
+            return this;
+        }
+
+        /**
+         * Add a hypernym edge, as a line of the hypernyms file would.
+         *
+         * @param synset synset ID
+         * @param hypernym ID of one of its hypernyms
+         * @return this patch
+         */
+        public Patch addHypernym(int synset, int hypernym) {
+            if (this.edgeCount == this.tails.length) {
+                this.tails = Arrays.copyOf(this.tails, 2 * this.edgeCount);
+                this.heads = Arrays.copyOf(this.heads, 2 * this.edgeCount);
             }
-            this.synIdsByWord.get(w).add(synId);
+            this.tails[this.edgeCount] = synset;
+            this.heads[this.edgeCount++] = hypernym;
+            return this;
         }
+
+    }
+
+
+    /*
+     * Read-only list of a base list's elements followed by more. Appending to
+     * one of these appends to its base instead, so lists don't nest however
+     * many patches are applied; the base (e.g. snapshot glosses) stays lazy.
+     */
+    private static final class AppendedList extends AbstractList<String> {
+
+        private final List<String> base;
+        private final String[] added;
+
+        private AppendedList(List<String> base, String[] added) {
+            this.base = base;
+            this.added = added;
+        }
+
+        static List<String> of(List<String> list, String[] more) {
+            if (more.length == 0) return list;
+            if (!(list instanceof AppendedList)) return new AppendedList(list, more);
+            AppendedList appended = (AppendedList) list;
+            String[] added = Arrays.copyOf(appended.added, appended.added.length + more.length);
+            System.arraycopy(more, 0, added, appended.added.length, more.length);
+            return new AppendedList(appended.base, added);
+        }
+
+        public int size() {return this.base.size() + this.added.length;}
+
+        public String get(int i) {
+            if (i < 0 || i >= size()) throw new IndexOutOfBoundsException("Index " + i);
+            return i < this.base.size() ? this.base.get(i) : this.added[i - this.base.size()];
+        }
+
     }
 
 
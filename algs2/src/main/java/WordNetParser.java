@@ -0,0 +1,345 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * Byte-level streaming parser for the WordNet synsets and hypernyms
+ * files. Each file is memory-mapped through its channel and scanned
+ * byte by byte, without per-line Strings, split arrays or sets; fields
+ * go straight into flat primitive buffers that the graph and index
+ * builders consume. Large files are cut into chunks at line breaks and
+ * the chunks are parsed in parallel, then handed over in file order.
+ * Glosses aren't decoded at all: each synset keeps only the offset of
+ * its gloss in the mapping, and {@link #glosses} decodes one on demand.
+ *
+ * Formats, one record per line:
+ * <pre>
+ *   synsets:    id,noun[ noun]*,gloss      (gloss runs to end of line)
+ *   hypernyms:  id[,hypernymId]*
+ * </pre>
+ * IDs must fit in an int. Line breaks may be CRLF, blank lines are
+ * skipped, and the last line needs no line break. As when hypernym lines
+ * were trimmed and split, a hypernym line may have blanks around it and
+ * trailing delimiters after its last ID.
+ *
+ * @author Vince Reuter
+ */
+final class WordNetParser {
+
+
+    // Files smaller than this are parsed as a single chunk.
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+
+    private static final byte NEWLINE = '\n';
+    private static final byte RETURN = '\r';
+    private static final byte FIELDS_DELIMITER = ',';
+    private static final byte NOUNS_DELIMITER = ' ';
+
+    private WordNetParser() {}
+
+
+    /** Nouns and gloss offsets parsed from one chunk of a synsets file, in file order. */
+    static final class SynsetChunk {
+
+        int nounCount;
+        int[] nounSynsets = new int[64];
+        String[] nouns = new String[64];
+
+        int synsetCount;
+        int[] synsetIds = new int[32];
+        int[] glossStarts = new int[32];
+
+        private void noun(int synset, String noun) {
+            if (this.nounCount == this.nouns.length) {
+                this.nounSynsets = Arrays.copyOf(this.nounSynsets, 2 * this.nounCount);
+                this.nouns = Arrays.copyOf(this.nouns, 2 * this.nounCount);
+            }
+            this.nounSynsets[this.nounCount] = synset;
+            this.nouns[this.nounCount++] = noun;
+        }
+
+        private void synset(int id, int glossStart) {
+            if (this.synsetCount == this.synsetIds.length) {
+                this.synsetIds = Arrays.copyOf(this.synsetIds, 2 * this.synsetCount);
+                this.glossStarts = Arrays.copyOf(this.glossStarts, 2 * this.synsetCount);
+            }
+            this.synsetIds[this.synsetCount] = id;
+            this.glossStarts[this.synsetCount++] = glossStart;
+        }
+
+    }
+
+
+    /** Hypernym edges parsed from one chunk of a hypernyms file, in file order. */
+    static final class EdgeChunk {
+
+        int edgeCount;
+        int[] tails = new int[64];
+        int[] heads = new int[64];
+
+        private void edge(int tail, int head) {
+            if (this.edgeCount == this.tails.length) {
+                this.tails = Arrays.copyOf(this.tails, 2 * this.edgeCount);
+                this.heads = Arrays.copyOf(this.heads, 2 * this.edgeCount);
+            }
+            this.tails[this.edgeCount] = tail;
+            this.heads[this.edgeCount++] = head;
+        }
+
+    }
+
+
+    /**
+     * Parse a synsets file, mapped with {@link #map(String)}.
+     *
+     * @param bytes synsets file contents
+     * @return parsed chunks, in file order
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    static List<SynsetChunk> parseSynsets(final ByteBuffer bytes) {
+        List<RecursiveTask<SynsetChunk>> tasks = new ArrayList<RecursiveTask<SynsetChunk>>();
+        for (final int[] range : chunks(bytes)) {
+            tasks.add(new RecursiveTask<SynsetChunk>() {
+                private static final long serialVersionUID = 1L;
+                protected SynsetChunk compute() {return parseSynsets(bytes, range[0], range[1]);}
+            });
+        }
+        return runAll(tasks);
+    }
+
+
+    /**
+     * Parse a hypernyms file.
+     *
+     * @param path hypernyms file
+     * @return parsed chunks, in file order
+     * @throws IllegalArgumentException if a line is malformed
+     * @throws UncheckedIOException if the file can't be read
+     */
+    static List<EdgeChunk> parseHypernyms(String path) {
+        ByteBuffer bytes = map(path);
+        List<RecursiveTask<EdgeChunk>> tasks = new ArrayList<RecursiveTask<EdgeChunk>>();
+        for (final int[] range : chunks(bytes)) {
+            tasks.add(new RecursiveTask<EdgeChunk>() {
+                private static final long serialVersionUID = 1L;
+                protected EdgeChunk compute() {return parseHypernyms(bytes, range[0], range[1]);}
+            });
+        }
+        return runAll(tasks);
+    }
+
+
+    /* Parse the synset lines within [start, end). */
+    private static SynsetChunk parseSynsets(ByteBuffer bytes, int start, int end) {
+        SynsetChunk chunk = new SynsetChunk();
+        Decoder decoder = new Decoder(bytes);
+        int p = start;
+        while (p < end) {
+            int lineEnd = lineEnd(bytes, p, end);
+            if (contentEnd(bytes, p, lineEnd) == p) {       // Blank line
+                p = lineEnd + 1;
+                continue;
+            }
+
+            /* Synset ID */
+            int id = 0;
+            int q = p;
+            for (byte b; q < lineEnd && (b = bytes.get(q)) != FIELDS_DELIMITER; q++) {
+                id = digit(bytes, q, b, id);
+            }
+            if (q == p || q == lineEnd) throw malformed("synset", bytes, p, lineEnd);
+
+            /* Space-separated nouns */
+            int nounStart = ++q;
+            for (byte b; q < lineEnd && (b = bytes.get(q)) != FIELDS_DELIMITER; q++) {
+                if (b != NOUNS_DELIMITER) continue;
+                if (q > nounStart) chunk.noun(id, decoder.decode(nounStart, q));
+                nounStart = q + 1;
+            }
+            if (q == lineEnd) throw malformed("synset", bytes, p, lineEnd);
+            if (q > nounStart) chunk.noun(id, decoder.decode(nounStart, q));
+
+            /* Everything after the second delimiter is gloss, commas and all; it's decoded on demand. */
+            chunk.synset(id, q + 1);
+            p = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+
+    /* Parse the hypernym lines within [start, end). */
+    private static EdgeChunk parseHypernyms(ByteBuffer bytes, int start, int end) {
+        EdgeChunk chunk = new EdgeChunk();
+        int p = start;
+        while (p < end) {
+            int lineEnd = lineEnd(bytes, p, end);
+            int first = p;
+            int last = lineEnd;
+            while (first < last && isBlank(bytes.get(first))) first++;
+            while (last > first && (isBlank(bytes.get(last - 1)) || bytes.get(last - 1) == FIELDS_DELIMITER)) last--;
+            if (last == first) {                            // Blank line
+                p = lineEnd + 1;
+                continue;
+            }
+            int id = -1;
+            int value = 0;
+            int fieldStart = first;
+            for (int q = first; q <= last; q++) {
+                byte b = q < last ? bytes.get(q) : FIELDS_DELIMITER;
+                if (b != FIELDS_DELIMITER) {
+                    value = digit(bytes, q, b, value);
+                    continue;
+                }
+                if (q == fieldStart) throw malformed("hypernym", bytes, p, lineEnd);
+                if (id == -1) id = value;
+                else chunk.edge(id, value);
+                value = 0;
+                fieldStart = q + 1;
+            }
+            p = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+
+    /* Accumulate one decimal digit, rejecting anything else, and IDs too large for an int. */
+    private static int digit(ByteBuffer bytes, int position, byte b, int value) {
+        if (b < '0' || b > '9') {
+            throw new IllegalArgumentException(String.format(
+                    "Expected a digit at byte %d; got '%c'", position, (char) b));
+        }
+        int d = b - '0';
+        if (value > (Integer.MAX_VALUE - d) / 10) {
+            throw new IllegalArgumentException(String.format(
+                    "ID too large for an int, at byte %d", position));
+        }
+        return 10 * value + d;
+    }
+
+
+    /* Whitespace or control character, as String.trim() would drop. */
+    private static boolean isBlank(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+
+    /* Position of the newline ending the line that starts at p, or end. */
+    private static int lineEnd(ByteBuffer bytes, int p, int end) {
+        while (p < end && bytes.get(p) != NEWLINE) p++;
+        return p;
+    }
+
+
+    /* End of a line's content, dropping a trailing carriage return. */
+    private static int contentEnd(ByteBuffer bytes, int start, int lineEnd) {
+        return lineEnd > start && bytes.get(lineEnd - 1) == RETURN ? lineEnd - 1 : lineEnd;
+    }
+
+
+    /* UTF-8 decoding of byte ranges through one reusable scratch array. */
+    private static final class Decoder {
+
+        private final ByteBuffer bytes;
+        private byte[] scratch = new byte[256];
+
+        private Decoder(ByteBuffer bytes) {this.bytes = bytes;}
+
+        private String decode(int start, int end) {
+            int length = end - start;
+            if (length > this.scratch.length) {
+                this.scratch = new byte[Math.max(length, 2 * this.scratch.length)];
+            }
+            for (int i = 0; i < length; i++) this.scratch[i] = this.bytes.get(start + i);
+            return new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+    }
+
+
+    private static IllegalArgumentException malformed(String kind, ByteBuffer bytes, int start, int lineEnd) {
+        return new IllegalArgumentException(String.format("Malformed %s line at byte %d: '%s'",
+                kind, start, new Decoder(bytes).decode(start, lineEnd)));
+    }
+
+
+    /* Cut the file into about one chunk per core, each ending just after a newline. */
+    private static List<int[]> chunks(ByteBuffer bytes) {
+        int size = bytes.limit();
+        int n = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), size / MIN_CHUNK_BYTES));
+        List<int[]> ranges = new ArrayList<int[]>(n);
+        int start = 0;
+        for (int i = 1; i <= n && start < size; i++) {
+            int end = i == n ? size : Math.max(start, (int) ((long) size * i / n));
+            while (end < size && bytes.get(end - 1) != NEWLINE) end++;
+            if (end > start) ranges.add(new int[] {start, end});
+            start = end;
+        }
+        return ranges;
+    }
+
+
+    /* Run tasks on the common fork-join pool, returning results in task order. */
+    private static <T> List<T> runAll(List<RecursiveTask<T>> tasks) {
+        if (tasks.size() == 1) return Collections.singletonList(tasks.get(0).invoke());
+        for (RecursiveTask<T> task : tasks) ForkJoinPool.commonPool().execute(task);
+        List<T> results = new ArrayList<T>(tasks.size());
+        for (RecursiveTask<T> task : tasks) results.add(task.join());
+        return results;
+    }
+
+
+    /**
+     * Get the glosses of a synsets file without decoding any of them up
+     * front: each is decoded from the mapping when it's fetched.
+     *
+     * @param bytes synsets file contents, as parsed
+     * @param glossStarts position of each synset's gloss, by synset ID
+     * @return read-only list of glosses by synset ID
+     */
+    static List<String> glosses(final ByteBuffer bytes, final int[] glossStarts) {
+        return new AbstractList<String>() {
+            public int size() {return glossStarts.length;}
+            public String get(int v) {
+                if (v < 0 || v >= glossStarts.length) throw new IndexOutOfBoundsException("Index " + v);
+                int start = glossStarts[v];
+                int end = contentEnd(bytes, start, lineEnd(bytes, start, bytes.limit()));
+                byte[] utf8 = new byte[end - start];
+                ByteBuffer view = bytes.duplicate();
+                view.position(start);
+                view.get(utf8);
+                return new String(utf8, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+
+    /**
+     * Map a whole file read-only. The mapping outlives the channel, and
+     * its pages are the OS's file cache rather than heap.
+     *
+     * @param path file to map
+     * @return file contents
+     * @throws UncheckedIOException if the file can't be read
+     */
+    static ByteBuffer map(String path) {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read " + path, e);
+        }
+    }
+
+
+}
@@ -0,0 +1,397 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * Binary snapshot format for a validated WordNet. Writing compiles
+ * the lexicon and hypernym graph into one file; reading memory-maps
+ * that file, so nothing is parsed or validated again: the graph and
+ * the index's arrays come out as bulk array copies, while nouns are
+ * searched for and glosses decoded in the mapping, only when they're
+ * asked for.
+ *
+ * Layout, all ints big-endian:
+ * <pre>
+ *   MAGIC VERSION V E N L R
+ *   graph offsets [V + 1]         graph targets [E]
+ *   noun byte offsets [N + 1]     noun synset offsets [N + 1]   noun synset IDs
+ *   synset noun offsets [V + 1]   synset noun IDs
+ *   gloss byte offsets [V + 1]
+ *   label offsets [V + 1]         label ancestors [L]           label distances [L]
+ *   synset IDs by number [V]
+ *   noun bytes (UTF-8)            gloss bytes (UTF-8)
+ * </pre>
+ * Nouns appear in ID order, which is sorted order, so a lookup is a
+ * binary search that compares a noun with the stored UTF-8 in place;
+ * the CSR arrays are NounIndex's own, so loading them is a straight copy. Ancestor labels are
+ * optional; L is -1, and their section absent, if there are none.
+ * Likewise, a WordNet in locality order is saved in that order, with
+ * the file synset ID of each vertex; R is 1 if that section is there,
+ * and 0 if vertices are synset IDs.
+ *
+ * @author Vince Reuter
+ */
+final class WordNetSnapshot {
+
+
+    private static final int MAGIC = 0x574E4554;     // "WNET"
+    private static final int VERSION = 4;
+    private static final int HEADER_BYTES = 28;
+
+    private WordNetSnapshot() {}
+
+
+    /**
+     * Compile WordNet's lexicon and graph into a snapshot file. The
+     * snapshot is written to a temporary file beside the target, then
+     * moved over it, since the glosses being written may be read from a
+     * mapping of the very file they're replacing (as may other readers).
+     *
+     * @param path file to (over)write
+     * @param index nouns and synsets, indexed both ways
+     * @param glosses synset glosses by vertex
+     * @param G hypernym graph
+     * @param labels ancestor labels of G; null if none
+     * @param externalIds synset ID of each vertex of G; null if they're the same
+     * @throws UncheckedIOException if the file can't be written
+     */
+    static void write(String path, NounIndex index, List<String> glosses,
+                      ImmutableDigraph G, AncestorLabels labels, int[] externalIds) {
+
+        Path target = Paths.get(path).toAbsolutePath();
+        Path temporary = null;
+        try {
+            // Created as any new file would be (not owner-only, as createTempFile's are)
+            Path candidate = target.resolveSibling(String.format(
+                    "%s.%016x.tmp", target.getFileName(), ThreadLocalRandom.current().nextLong()));
+            OutputStream file = Files.newOutputStream(candidate, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            temporary = candidate;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+
+                int V = G.V();
+                int N = index.size();
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(V);
+                out.writeInt(G.E());
+                out.writeInt(N);
+                out.writeInt(labels == null ? -1 : labels.size());
+                out.writeInt(externalIds == null ? 0 : 1);
+
+                writeInts(out, G.offsets(), V + 1);
+                writeInts(out, G.targets(), G.E());
+
+                /* Noun offsets into the noun bytes, then the index's two CSR pairs as they are. */
+                byte[][] nounBytes = new byte[N][];
+                int offset = 0;
+                for (int id = 0; id < N; id++) {
+                    nounBytes[id] = index.noun(id).getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(offset);
+                    offset += nounBytes[id].length;
+                }
+                out.writeInt(offset);
+                writeInts(out, index.synsetOffsets(), N + 1);
+                writeInts(out, index.synsetIds(), index.synsetOffsets()[N]);
+                writeInts(out, index.nounOffsets(), V + 1);
+                writeInts(out, index.nounIds(), index.nounOffsets()[V]);
+
+                /* Gloss offsets, then the text blobs. */
+                byte[][] glossBytes = new byte[V][];
+                offset = 0;
+                for (int v = 0; v < V; v++) {
+                    glossBytes[v] = glosses.get(v).getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(offset);
+                    offset += glossBytes[v].length;
+                }
+                out.writeInt(offset);
+                if (labels != null) {
+                    writeInts(out, labels.labelOffsets(), V + 1);
+                    writeInts(out, labels.ancestors(), labels.size());
+                    writeInts(out, labels.distances(), labels.size());
+                }
+                if (externalIds != null) writeInts(out, externalIds, V);
+                for (byte[] noun : nounBytes) out.write(noun);
+                for (byte[] gloss : glossBytes) out.write(gloss);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't write WordNet snapshot " + path, e);
+        } finally {
+            // Gone already if it was moved into place
+            if (temporary != null) deleteQuietly(temporary);
+        }
+
+    }
+
+
+    /**
+     * Memory-map a snapshot file. The graph and index arrays are copied
+     * out in bulk; nouns and glosses stay in the mapping.
+     *
+     * @param path snapshot file
+     * @return the snapshot's contents
+     * @throws IllegalArgumentException if the file isn't a WordNet snapshot,
+     *         or is cut off or damaged
+     * @throws UncheckedIOException if the file can't be read
+     */
+    static Mapped read(String path) {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read WordNet snapshot " + path, e);
+        }
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a WordNet snapshot: " + path);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException(String.format(
+                    "Unsupported WordNet snapshot version %d in %s", buffer.getInt(4), path));
+        }
+        return new Mapped(buffer, path);
+    }
+
+
+    /** Contents of a memory-mapped snapshot. */
+    static final class Mapped {
+
+        private final ByteBuffer buffer;
+        private final String path;
+        private final ImmutableDigraph G;
+        private final NounIndex index;
+        private final AncestorLabels labels;
+        private final int[] externalIds;
+
+        /* Gloss section of the mapping */
+        private final IntBuffer glossOffsets;
+        private final int glossBytesStart;
+
+        /*
+         * Every section's size comes from the header or an earlier section,
+         * so each is checked against the file's length before it's sliced.
+         */
+        private Mapped(ByteBuffer buffer, String path) {
+            this.buffer = buffer;
+            this.path = path;
+            int V = buffer.getInt(8);
+            int E = buffer.getInt(12);
+            int N = buffer.getInt(16);
+            int L = buffer.getInt(20);
+            boolean renumbered = buffer.getInt(24) == 1;
+            if (V < 0 || E < 0 || N < 0 || L < -1) {
+                throw new IllegalArgumentException(String.format(
+                        "Damaged WordNet snapshot header in %s: V=%d, E=%d, N=%d, L=%d", path, V, E, N, L));
+            }
+            int position = HEADER_BYTES;
+
+            int[] offsets = ints(position, V + 1);
+            position += 4 * (V + 1);
+            int[] targets = ints(position, E);
+            position += 4 * E;
+            this.G = ImmutableDigraph.fromCSR(offsets, targets);
+
+            int[] nounByteOffsets = ints(position, N + 1);
+            position += 4 * (N + 1);
+            int[] synsetOffsets = ints(position, N + 1);
+            position += 4 * (N + 1);
+            int[] synsetIds = ints(position, synsetOffsets[N]);
+            position += 4 * synsetOffsets[N];
+            int[] nounOffsets = ints(position, V + 1);
+            position += 4 * (V + 1);
+            int[] nounIds = ints(position, nounOffsets[V]);
+            position += 4 * nounOffsets[V];
+            this.glossOffsets = intView(position, V + 1);
+            position += 4 * (V + 1);
+            if (L >= 0) {
+                int[] labelOffsets = ints(position, V + 1);
+                position += 4 * (V + 1);
+                int[] ancestors = ints(position, L);
+                position += 4 * L;
+                int[] distances = ints(position, L);
+                position += 4 * L;
+                this.labels = new AncestorLabels(labelOffsets, ancestors, distances);
+            } else {
+                this.labels = null;
+            }
+            if (renumbered) {
+                this.externalIds = ints(position, V);
+                position += 4 * V;
+            } else {
+                this.externalIds = null;
+            }
+            int nounBytesStart = position;
+            require(nounBytesStart + (long) nounByteOffsets[N], "the noun text");
+            this.glossBytesStart = position + nounByteOffsets[N];
+            require(this.glossBytesStart + (long) this.glossOffsets.get(V), "the gloss text");
+
+            this.index = new NounIndex(new MappedNouns(nounByteOffsets, nounBytesStart),
+                                       synsetOffsets, synsetIds, nounOffsets, nounIds);
+        }
+
+        ImmutableDigraph graph() {return this.G;}
+
+        NounIndex index() {return this.index;}
+
+        /* Ancestor labels of the graph; null if none were saved. */
+        AncestorLabels labels() {return this.labels;}
+
+        /* Synset ID of each vertex, if saved in locality order; null if they're the same. */
+        int[] externalIds() {return this.externalIds;}
+
+        /* Glosses by vertex, each decoded when it's fetched. */
+        List<String> glosses() {
+            return new AbstractList<String>() {
+                public int size() {return Mapped.this.G.V();}
+                public String get(int v) {return gloss(v);}
+            };
+        }
+
+        private String gloss(int v) {
+            if (v < 0 || v >= this.G.V()) throw new IndexOutOfBoundsException("Synset " + v);
+            int start = this.glossOffsets.get(v);
+            return utf8(this.glossBytesStart + start, this.glossOffsets.get(v + 1) - start);
+        }
+
+        private String utf8(int start, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer view = this.buffer.duplicate();
+            view.position(start);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /* Nouns in the mapping, in sorted (ID) order. */
+        private final class MappedNouns implements NounIndex.SortedNouns {
+
+            private final int[] byteOffsets;
+            private final int bytesStart;
+
+            MappedNouns(int[] byteOffsets, int bytesStart) {
+                this.byteOffsets = byteOffsets;
+                this.bytesStart = bytesStart;
+            }
+
+            public int size() {return this.byteOffsets.length - 1;}
+
+            public String noun(int id) {
+                return utf8(this.bytesStart + this.byteOffsets[id], this.byteOffsets[id + 1] - this.byteOffsets[id]);
+            }
+
+            public int id(String noun) {
+                int lo = 0;
+                int hi = size() - 1;
+                while (lo <= hi) {
+                    int mid = (lo + hi) >>> 1;
+                    int cmp = compare(noun, this.bytesStart + this.byteOffsets[mid],
+                                      this.bytesStart + this.byteOffsets[mid + 1]);
+                    if (cmp > 0) lo = mid + 1;
+                    else if (cmp < 0) hi = mid - 1;
+                    else return mid;
+                }
+                return -1;
+            }
+
+            /*
+             * Compare a noun with the UTF-8 bytes of a stored one, decoding
+             * them char by char as they're reached, in String.compareTo's
+             * order: by UTF-16 unit, so a character beyond the BMP compares
+             * as its two surrogates.
+             */
+            private int compare(String noun, int at, int end) {
+                ByteBuffer bytes = Mapped.this.buffer;
+                int i = 0;
+                while (at < end) {
+                    int b = bytes.get(at) & 0xFF;
+                    int codePoint;
+                    if (b < 0x80) {
+                        codePoint = b;
+                        at += 1;
+                    } else if (b < 0xE0) {
+                        codePoint = (b & 0x1F) << 6 | (bytes.get(at + 1) & 0x3F);
+                        at += 2;
+                    } else if (b < 0xF0) {
+                        codePoint = (b & 0x0F) << 12 | (bytes.get(at + 1) & 0x3F) << 6 | (bytes.get(at + 2) & 0x3F);
+                        at += 3;
+                    } else {
+                        codePoint = (b & 0x07) << 18 | (bytes.get(at + 1) & 0x3F) << 12
+                                  | (bytes.get(at + 2) & 0x3F) << 6 | (bytes.get(at + 3) & 0x3F);
+                        at += 4;
+                    }
+                    if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                        if (i == noun.length()) return -1;
+                        int cmp = noun.charAt(i++) - codePoint;
+                        if (cmp != 0) return cmp;
+                    } else {
+                        for (char unit : new char[] {Character.highSurrogate(codePoint),
+                                                     Character.lowSurrogate(codePoint)}) {
+                            if (i == noun.length()) return -1;
+                            int cmp = noun.charAt(i++) - unit;
+                            if (cmp != 0) return cmp;
+                        }
+                    }
+                }
+                return i == noun.length() ? 0 : 1;
+            }
+
+        }
+
+        private int[] ints(int position, int count) {
+            int[] values = new int[count];
+            intView(position, count).get(values);
+            return values;
+        }
+
+        private IntBuffer intView(int position, int count) {
+            if (count < 0) {
+                throw new IllegalArgumentException(String.format(
+                        "Damaged WordNet snapshot %s: section at byte %d has %d ints", this.path, position, count));
+            }
+            require(position + 4L * count, "the section at byte " + position);
+            ByteBuffer view = this.buffer.duplicate();
+            view.position(position);
+            view.limit(position + 4 * count);
+            return view.slice().asIntBuffer();
+        }
+
+        private void require(long end, String section) {
+            if (end > this.buffer.capacity()) {
+                throw new IllegalArgumentException(String.format(
+                        "Truncated WordNet snapshot %s: needs %d bytes for %s, but has %d",
+                        this.path, end, section, this.buffer.capacity()));
+            }
+        }
+
+    }
+
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // The write's own failure, if any, is what gets reported.
+        }
+    }
+
+
+    private static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++) out.writeInt(values[i]);
+    }
+
+
+}
@@ -0,0 +1,119 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Ancestor labels answer without searching, so every answer must be
+ * what an exhaustive BFS from each side gives: the same length, the
+ * lowest-numbered of the nearest common ancestors, the same ancestor
+ * sets. Labels updated for new edges must equal labels built afresh.
+ */
+public class AncestorLabelsTest
+    extends TestCase
+{
+    private static final int GRAPHS = 40;
+    private static final int QUERIES = 200;
+
+    public AncestorLabelsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( AncestorLabelsTest.class );
+    }
+
+    public void testPairQueriesMatchExhaustiveBFS()
+    {
+        Random random = new Random( 3 );
+        for ( int g = 0; g < GRAPHS; g++ )
+        {
+            ImmutableDigraph G = PairedShortCircuitBFSTest.randomDigraph( random, g % 2 == 0 );
+            AncestorLabels labels = AncestorLabels.build( G );
+            for ( int q = 0; q < QUERIES; q++ )
+            {
+                int v = random.nextInt( G.V() );
+                int w = random.nextInt( G.V() );
+                int[] fromV = PairedShortCircuitBFSTest.distances( G, Arrays.asList( v ) );
+                int[] fromW = PairedShortCircuitBFSTest.distances( G, Arrays.asList( w ) );
+                assertEquals( PairedShortCircuitBFSTest.length( fromV, fromW ), labels.length( v, w ) );
+                assertMeet( fromV, fromW, labels.meet( v, w ) );
+                assertAncestors( fromV, labels.ancestors( v ) );
+            }
+        }
+    }
+
+    public void testGroupQueriesMatchExhaustiveBFS()
+    {
+        Random random = new Random( 17 );
+        for ( int g = 0; g < GRAPHS; g++ )
+        {
+            ImmutableDigraph G = PairedShortCircuitBFSTest.randomDigraph( random, g % 2 == 0 );
+            AncestorLabels labels = AncestorLabels.build( G );
+            for ( int q = 0; q < QUERIES; q++ )
+            {
+                List<Integer> v = PairedShortCircuitBFSTest.group( random, G.V() );
+                List<Integer> w = PairedShortCircuitBFSTest.group( random, G.V() );
+                int[] fromV = PairedShortCircuitBFSTest.distances( G, v );
+                int[] fromW = PairedShortCircuitBFSTest.distances( G, w );
+                assertMeet( fromV, fromW, labels.meet( v, w ) );
+                assertAncestors( fromV, labels.ancestors( v ) );
+            }
+        }
+    }
+
+    /* New edges from random tails to lower vertices, and new vertices hanging below old ones. */
+    public void testUpdatedLabelsMatchRebuiltLabels()
+    {
+        Random random = new Random( 19 );
+        for ( int g = 0; g < GRAPHS; g++ )
+        {
+            ImmutableDigraph G = PairedShortCircuitBFSTest.randomDigraph( random, true );
+            int added = random.nextInt( 5 ) + ( G.V() == 1 ? 1 : 0 );
+            int V = G.V() + added;
+            int count = 1 + random.nextInt( 6 ) + added;
+            int[] tails = new int[count];
+            int[] heads = new int[count];
+            for ( int e = 0; e < count; e++ )
+            {
+                tails[e] = e < added ? G.V() + e : 1 + random.nextInt( V - 1 );
+                heads[e] = random.nextInt( tails[e] );
+            }
+            ImmutableDigraph patched = G.withEdges( V, tails, heads, count );
+            AncestorLabels updated = AncestorLabels.build( G ).update( patched, patched.reverse(), tails, count );
+            AncestorLabels rebuilt = AncestorLabels.build( patched );
+            assertTrue( Arrays.equals( rebuilt.labelOffsets(), updated.labelOffsets() ) );
+            assertTrue( Arrays.equals( rebuilt.ancestors(), updated.ancestors() ) );
+            assertTrue( Arrays.equals( rebuilt.distances(), updated.distances() ) );
+        }
+    }
+
+    /* Labels answer ties with the lowest-numbered ancestor among the nearest. */
+    private static void assertMeet( int[] fromV, int[] fromW, AncestralPath path )
+    {
+        int expected = PairedShortCircuitBFSTest.length( fromV, fromW );
+        assertEquals( expected, path.length() );
+        if ( expected == -1 ) return;
+        int x = 0;
+        while ( fromV[x] == -1 || fromW[x] == -1 || fromV[x] + fromW[x] != expected ) x++;
+        assertEquals( x, path.ancestor() );
+        assertEquals( fromV[x], path.distanceFromV() );
+        assertEquals( fromW[x], path.distanceFromW() );
+    }
+
+    private static void assertAncestors( int[] expected, AncestorMap found )
+    {
+        int reached = 0;
+        for ( int x = 0; x < expected.length; x++ )
+        {
+            assertEquals( expected[x], found.distanceTo( x ) );
+            if ( expected[x] != -1 ) reached++;
+        }
+        assertEquals( reached, found.size() );
+    }
+}
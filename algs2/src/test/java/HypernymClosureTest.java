@@ -0,0 +1,184 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * The closure answers is-a queries from intervals and exception lists,
+ * so every answer must be what a plain DFS up the hypernym edges gives,
+ * and so must WordNet's is-a queries, which also rule pairs out by depth.
+ */
+public class HypernymClosureTest
+    extends TestCase
+{
+    private static final int GRAPHS = 40;
+    private static final int QUERIES = 500;
+
+    public HypernymClosureTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( HypernymClosureTest.class );
+    }
+
+    public void testClosureMatchesDFS()
+    {
+        Random random = new Random( 59 );
+        for ( int g = 0; g < GRAPHS; g++ )
+        {
+            ImmutableDigraph G = rootedDAG( random );
+            TopologicalOrder topology = topology( G );
+            HypernymClosure closure = HypernymClosure.build( G, G.reverse(), topology );
+            boolean[][] above = closure( G );
+            for ( int a = 0; a < G.V(); a++ )
+            {
+                for ( int d = 0; d < G.V(); d++ )
+                {
+                    assertEquals( a == d || above[d][a], closure.reaches( a, d ) );
+                }
+            }
+            for ( int q = 0; q < QUERIES / 10; q++ )
+            {
+                List<Integer> sources = PairedShortCircuitBFSTest.group( random, G.V() );
+                assertTrue( Arrays.equals( ancestors( above, sources ), closure.ancestors( sources ) ) );
+            }
+        }
+    }
+
+    /* Depth is the longest path up to the root, so a hypernym is always shallower. */
+    public void testDepthIsLongestPathToRoot()
+    {
+        Random random = new Random( 61 );
+        for ( int g = 0; g < GRAPHS; g++ )
+        {
+            ImmutableDigraph G = rootedDAG( random );
+            TopologicalOrder topology = topology( G );
+            int[] longest = new int[G.V()];
+            for ( int v = 1; v < G.V(); v++ )
+            {
+                for ( int h : G.adj( v ) ) longest[v] = Math.max( longest[v], longest[h] + 1 );
+            }
+            for ( int v = 0; v < G.V(); v++ ) assertEquals( longest[v], topology.depth( v ) );
+        }
+    }
+
+    public void testWordNetIsAQueriesMatchDFS() throws IOException
+    {
+        Random random = new Random( 67 );
+        for ( int g = 0; g < GRAPHS / 4; g++ )
+        {
+            ImmutableDigraph G = rootedDAG( random );
+            boolean[][] above = closure( G );
+            List<List<Integer>> senses = new ArrayList<List<Integer>>();
+            for ( int i = 0; i < G.V(); i++ ) senses.add( new ArrayList<Integer>() );
+            File synsetsFile = File.createTempFile( "synsets", ".txt" );
+            File hypernymsFile = File.createTempFile( "hypernyms", ".txt" );
+            try
+            {
+                try ( PrintWriter synsets = new PrintWriter( synsetsFile );
+                      PrintWriter hypernyms = new PrintWriter( hypernymsFile ) )
+                {
+                    for ( int v = 0; v < G.V(); v++ )
+                    {
+                        int other = random.nextInt( G.V() );
+                        senses.get( v ).add( v );
+                        if ( other != v ) senses.get( other ).add( v );
+                        synsets.println( v + ",noun" + v + ( other != v ? " noun" + other : "" ) + ",gloss" );
+                        hypernyms.print( v );
+                        for ( int h : G.adj( v ) ) hypernyms.print( "," + h );
+                        hypernyms.println();
+                    }
+                }
+                WordNet wordnet = new WordNet( synsetsFile.getPath(), hypernymsFile.getPath() );
+                for ( WordNet view : Arrays.asList( wordnet, wordnet.withLocalityOrder() ) )
+                {
+                    for ( int q = 0; q < QUERIES; q++ )
+                    {
+                        int a = random.nextInt( G.V() );
+                        int b = random.nextInt( G.V() );
+                        assertEquals( isHypernymOf( above, senses.get( a ), senses.get( b ) ),
+                                      view.isHypernymOf( "noun" + a, "noun" + b ) );
+                        assertTrue( Arrays.equals( ancestors( above, senses.get( a ) ), view.hypernyms( "noun" + a ) ) );
+                    }
+                }
+            }
+            finally
+            {
+                synsetsFile.delete();
+                hypernymsFile.delete();
+            }
+        }
+    }
+
+    /* Random rooted DAG of 1 to 300 vertices: vertex 0 is the root, every other one has hypernyms below it. */
+    private static ImmutableDigraph rootedDAG( Random random )
+    {
+        int V = 1 + random.nextInt( 300 );
+        ImmutableDigraph.Builder builder = new ImmutableDigraph.Builder( V );
+        for ( int v = 1; v < V; v++ )
+        {
+            int hypernyms = 1 + ( random.nextInt( 3 ) == 0 ? random.nextInt( 3 ) : 0 );
+            for ( int h = 0; h < hypernyms; h++ ) builder.addEdge( v, random.nextInt( v ) );
+        }
+        return builder.build();
+    }
+
+    /* Every hypernym has a lower number, so descending order puts each vertex before its hypernyms. */
+    private static TopologicalOrder topology( ImmutableDigraph G )
+    {
+        int[] hyponymsFirst = new int[G.V()];
+        for ( int i = 0; i < G.V(); i++ ) hyponymsFirst[i] = G.V() - 1 - i;
+        return new TopologicalOrder( G, hyponymsFirst );
+    }
+
+    /* Plain DFS from every vertex: above[d][a] when a is a hypernym of d, direct or not. */
+    private static boolean[][] closure( ImmutableDigraph G )
+    {
+        boolean[][] above = new boolean[G.V()][G.V()];
+        for ( int d = 0; d < G.V(); d++ ) dfs( G, d, above[d] );
+        return above;
+    }
+
+    private static void dfs( ImmutableDigraph G, int x, boolean[] marked )
+    {
+        for ( int y : G.adj( x ) )
+        {
+            if ( marked[y] ) continue;
+            marked[y] = true;
+            dfs( G, y, marked );
+        }
+    }
+
+    private static int[] ancestors( boolean[][] above, List<Integer> sources )
+    {
+        TreeSet<Integer> found = new TreeSet<Integer>();
+        for ( int s : sources )
+        {
+            for ( int a = 0; a < above[s].length; a++ ) if ( above[s][a] ) found.add( a );
+        }
+        int[] ancestors = new int[found.size()];
+        int i = 0;
+        for ( int a : found ) ancestors[i++] = a;
+        return ancestors;
+    }
+
+    private static boolean isHypernymOf( boolean[][] above, List<Integer> a, List<Integer> b )
+    {
+        for ( int x : a )
+        {
+            for ( int y : b ) if ( above[y][x] ) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,191 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * The lockstep search stops early, so it must still find what an
+ * exhaustive BFS from each side finds: the same length, and an
+ * ancestor that's actually that close to both sides.
+ */
+public class PairedShortCircuitBFSTest
+    extends TestCase
+{
+    private static final int GRAPHS = 40;
+    private static final int QUERIES = 200;
+
+    public PairedShortCircuitBFSTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( PairedShortCircuitBFSTest.class );
+    }
+
+    public void testPairSearchMatchesExhaustiveBFS()
+    {
+        Random random = new Random( 5 );
+        for ( int g = 0; g < GRAPHS; g++ )
+        {
+            ImmutableDigraph G = randomDigraph( random, g % 2 == 0 );
+            PairedShortCircuitBFS bfs = new PairedShortCircuitBFS( G );
+            for ( int q = 0; q < QUERIES; q++ )
+            {
+                int v = random.nextInt( G.V() );
+                int w = random.nextInt( G.V() );
+                int[] fromV = distances( G, Arrays.asList( v ) );
+                int[] fromW = distances( G, Arrays.asList( w ) );
+                int expected = length( fromV, fromW );
+                assertEquals( expected, bfs.search( v, w ) );
+                assertAncestor( fromV, fromW, expected, bfs );
+                assertEquals( expected, bfs.search( w, v ) );
+            }
+        }
+    }
+
+    public void testGroupSearchMatchesExhaustiveBFS()
+    {
+        Random random = new Random( 7 );
+        for ( int g = 0; g < GRAPHS; g++ )
+        {
+            ImmutableDigraph G = randomDigraph( random, g % 2 == 0 );
+            PairedShortCircuitBFS bfs = new PairedShortCircuitBFS( G );
+            for ( int q = 0; q < QUERIES; q++ )
+            {
+                List<Integer> v = group( random, G.V() );
+                List<Integer> w = group( random, G.V() );
+                int[] fromV = distances( G, v );
+                int[] fromW = distances( G, w );
+                int expected = length( fromV, fromW );
+                assertEquals( expected, bfs.search( v, w ) );
+                assertAncestor( fromV, fromW, expected, bfs );
+            }
+        }
+    }
+
+    public void testBoundedSearchStopsOnlyPastTheBound()
+    {
+        Random random = new Random( 11 );
+        for ( int g = 0; g < GRAPHS; g++ )
+        {
+            ImmutableDigraph G = randomDigraph( random, g % 2 == 0 );
+            PairedShortCircuitBFS bfs = new PairedShortCircuitBFS( G );
+            for ( int q = 0; q < QUERIES; q++ )
+            {
+                int v = random.nextInt( G.V() );
+                int w = random.nextInt( G.V() );
+                int expected = length( distances( G, Arrays.asList( v ) ), distances( G, Arrays.asList( w ) ) );
+                int maxLength = random.nextInt( 8 );
+                int found = bfs.search( v, w, maxLength, Long.MAX_VALUE );
+                assertFalse( bfs.timedOut() );
+                assertEquals( expected != -1 && expected <= maxLength ? expected : -1, found );
+            }
+        }
+    }
+
+    public void testAncestorsMatchExhaustiveBFS()
+    {
+        Random random = new Random( 13 );
+        for ( int g = 0; g < GRAPHS; g++ )
+        {
+            ImmutableDigraph G = randomDigraph( random, g % 2 == 0 );
+            PairedShortCircuitBFS bfs = new PairedShortCircuitBFS( G );
+            for ( int q = 0; q < QUERIES / 10; q++ )
+            {
+                List<Integer> sources = group( random, G.V() );
+                int[] expected = distances( G, sources );
+                AncestorMap found = bfs.ancestors( sources );
+                int reached = 0;
+                for ( int x = 0; x < G.V(); x++ )
+                {
+                    assertEquals( expected[x], found.distanceTo( x ) );
+                    if ( expected[x] != -1 ) reached++;
+                }
+                assertEquals( reached, found.size() );
+            }
+        }
+    }
+
+    /* The search may break ties its own way, but its ancestor must be as near as the SAP is long. */
+    private static void assertAncestor( int[] fromV, int[] fromW, int expected, PairedShortCircuitBFS bfs )
+    {
+        int x = bfs.ancestor();
+        if ( expected == -1 )
+        {
+            assertEquals( -1, x );
+            return;
+        }
+        assertEquals( expected, fromV[x] + fromW[x] );
+        AncestralPath path = bfs.result( true );
+        assertEquals( fromV[x], path.distanceFromV() );
+        assertEquals( fromW[x], path.distanceFromW() );
+        assertEquals( fromV[x] + 1, path.pathFromV().length );
+        assertEquals( fromW[x] + 1, path.pathFromW().length );
+    }
+
+    /* Random digraph of 1 to 60 vertices: a DAG with edges pointing to lower vertices, or anything. */
+    static ImmutableDigraph randomDigraph( Random random, boolean acyclic )
+    {
+        int V = 1 + random.nextInt( 60 );
+        ImmutableDigraph.Builder builder = new ImmutableDigraph.Builder( V );
+        int E = random.nextInt( 2 * V + 1 );
+        for ( int e = 0; e < E; e++ )
+        {
+            int v = random.nextInt( V );
+            if ( acyclic && v == 0 ) continue;
+            builder.addEdge( v, acyclic ? random.nextInt( v ) : random.nextInt( V ) );
+        }
+        return builder.build();
+    }
+
+    static List<Integer> group( Random random, int V )
+    {
+        List<Integer> group = new ArrayList<Integer>();
+        int size = 1 + random.nextInt( 4 );
+        for ( int i = 0; i < size; i++ ) group.add( random.nextInt( V ) );
+        return group;
+    }
+
+    /* Plain BFS over every edge: distance of each vertex from the nearest source, -1 if unreached. */
+    static int[] distances( ImmutableDigraph G, Iterable<Integer> sources )
+    {
+        int[] distTo = new int[G.V()];
+        Arrays.fill( distTo, -1 );
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        for ( int s : sources )
+        {
+            if ( distTo[s] == -1 ) queue.add( s );
+            distTo[s] = 0;
+        }
+        while ( !queue.isEmpty() )
+        {
+            int x = queue.remove();
+            for ( int y : G.adj( x ) )
+            {
+                if ( distTo[y] != -1 ) continue;
+                distTo[y] = distTo[x] + 1;
+                queue.add( y );
+            }
+        }
+        return distTo;
+    }
+
+    /* Shortest ancestral path length, over every common ancestor; -1 if there's none. */
+    static int length( int[] fromV, int[] fromW )
+    {
+        int best = -1;
+        for ( int x = 0; x < fromV.length; x++ )
+        {
+            if ( fromV[x] == -1 || fromW[x] == -1 ) continue;
+            if ( best == -1 || fromV[x] + fromW[x] < best ) best = fromV[x] + fromW[x];
+        }
+        return best;
+    }
+}
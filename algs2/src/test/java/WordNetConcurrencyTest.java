@@ -0,0 +1,136 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Many threads querying one shared WordNet (or SAP) must each
+ * get the same answers a single thread would.
+ */
+public class WordNetConcurrencyTest
+    extends TestCase
+{
+    private static final int SYNSETS = 3000;
+    private static final int QUERIES = 2000;
+    private static final int THREADS = 8;
+
+    private File synsetsFile;
+    private File hypernymsFile;
+    private List<String> nouns;
+
+    public WordNetConcurrencyTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( WordNetConcurrencyTest.class );
+    }
+
+    /* Random rooted DAG: synset 0 is the root, every other synset points at earlier ones. */
+    protected void setUp() throws IOException
+    {
+        Random random = new Random( 17 );
+        this.synsetsFile = File.createTempFile( "synsets", ".txt" );
+        this.hypernymsFile = File.createTempFile( "hypernyms", ".txt" );
+        this.nouns = new ArrayList<String>();
+        try ( PrintWriter synsets = new PrintWriter( this.synsetsFile );
+              PrintWriter hypernyms = new PrintWriter( this.hypernymsFile ) )
+        {
+            for ( int v = 0; v < SYNSETS; v++ )
+            {
+                String noun = "noun" + v;
+                String synonym = "noun" + random.nextInt( SYNSETS );
+                this.nouns.add( noun );
+                synsets.println( v + "," + noun + " " + synonym + ",gloss for " + v );
+                if ( v == 0 )
+                {
+                    hypernyms.println( 0 );
+                    continue;
+                }
+                hypernyms.print( v + "," + random.nextInt( v ) );
+                if ( random.nextInt( 5 ) == 0 ) hypernyms.print( "," + random.nextInt( v ) );
+                hypernyms.println();
+            }
+        }
+    }
+
+    protected void tearDown()
+    {
+        this.synsetsFile.delete();
+        this.hypernymsFile.delete();
+    }
+
+    public void testConcurrentWordNetQueriesMatchSequential() throws Exception
+    {
+        final WordNet wordnet = new WordNet( this.synsetsFile.getPath(), this.hypernymsFile.getPath() );
+        assertConcurrentMatchesSequential( wordnet );
+    }
+
+    public void testConcurrentCachedWordNetQueriesMatchSequential() throws Exception
+    {
+        WordNet wordnet = new WordNet( this.synsetsFile.getPath(), this.hypernymsFile.getPath() );
+        WordNet cached = wordnet.withCache( QUERIES / 4, QueryCache.Policy.LRU );
+        assertConcurrentMatchesSequential( cached );
+        assertTrue( cached.cache().hits() > 0 );
+        assertTrue( cached.cache().size() <= QUERIES / 4 );
+    }
+
+    private void assertConcurrentMatchesSequential( final WordNet wordnet ) throws Exception
+    {
+        Random random = new Random( 23 );
+        final List<String[]> pairs = new ArrayList<String[]>();
+        final int[] expected = new int[QUERIES];
+        for ( int q = 0; q < QUERIES; q++ )
+        {
+            String[] pair = { this.nouns.get( random.nextInt( SYNSETS ) ),
+                              this.nouns.get( random.nextInt( SYNSETS ) ) };
+            pairs.add( pair );
+            expected[q] = wordnet.distance( pair[0], pair[1] );
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool( THREADS );
+        try
+        {
+            List<Future<Integer>> mismatches = new ArrayList<Future<Integer>>();
+            for ( int t = 0; t < THREADS; t++ )
+            {
+                final long seed = t;
+                mismatches.add( pool.submit( new Callable<Integer>()
+                {
+                    public Integer call()
+                    {
+                        List<Integer> order = new ArrayList<Integer>();
+                        for ( int q = 0; q < QUERIES; q++ ) order.add( q );
+                        Collections.shuffle( order, new Random( seed ) );
+                        int wrong = 0;
+                        for ( int q : order )
+                        {
+                            String[] pair = pairs.get( q );
+                            if ( wordnet.distance( pair[0], pair[1] ) != expected[q] ) wrong++;
+                            if ( wordnet.distance( pair[1], pair[0] ) != expected[q] ) wrong++;
+                        }
+                        return wrong;
+                    }
+                } ) );
+            }
+            for ( Future<Integer> wrong : mismatches ) assertEquals( 0, wrong.get().intValue() );
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * The byte-level parser must read what the line-based one did, and
+ * reject IDs it can't represent rather than wrap them around.
+ */
+public class WordNetParserTest
+    extends TestCase
+{
+    private File hypernymsFile;
+
+    public WordNetParserTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( WordNetParserTest.class );
+    }
+
+    protected void setUp() throws IOException
+    {
+        this.hypernymsFile = File.createTempFile( "hypernyms", ".txt" );
+    }
+
+    protected void tearDown()
+    {
+        this.hypernymsFile.delete();
+    }
+
+    public void testSynsetsWithCRLFBlankLinesAndNoFinalNewline()
+    {
+        ByteBuffer bytes = bytes( "0,a b,first gloss\r\n\r\n1,c,second, with commas\n\n2,d,last" );
+        List<WordNetParser.SynsetChunk> chunks = WordNetParser.parseSynsets( bytes );
+        assertEquals( 1, chunks.size() );
+        WordNetParser.SynsetChunk chunk = chunks.get( 0 );
+        assertEquals( 3, chunk.synsetCount );
+        assertEquals( 4, chunk.nounCount );
+        assertEquals( "a", chunk.nouns[0] );
+        assertEquals( "b", chunk.nouns[1] );
+        assertEquals( 0, chunk.nounSynsets[1] );
+        assertEquals( 2, chunk.nounSynsets[3] );
+
+        List<String> glosses = WordNetParser.glosses( bytes, new int[] { chunk.glossStarts[0],
+                                                                         chunk.glossStarts[1],
+                                                                         chunk.glossStarts[2] } );
+        assertEquals( "first gloss", glosses.get( 0 ) );
+        assertEquals( "second, with commas", glosses.get( 1 ) );
+        assertEquals( "last", glosses.get( 2 ) );
+    }
+
+    public void testHypernymsWithCRLFBlankLinesAndNoFinalNewline() throws IOException
+    {
+        assertEquals( "1>0 2>0 2>1 3>2", edges( "0\r\n1,0\r\n\r\n2,0,1\n\n3,2" ) );
+    }
+
+    public void testHypernymsToleratesTrailingBlanksAndDelimiters() throws IOException
+    {
+        assertEquals( "1>0 2>1 3>2", edges( "0\n1,0 \n  2,1,\n3,2,, \t\r\n" ) );
+    }
+
+    public void testOverflowingIdsAreRejected() throws IOException
+    {
+        assertRejectsHypernyms( "1,4294967296\n" );
+        assertRejectsHypernyms( "4294967297,0\n" );
+        assertRejectsHypernyms( "1,2147483648\n" );
+        assertRejectsSynsets( "4294967297,b,g1\n" );
+        assertEquals( "2147483647>0", edges( "2147483647,0\n" ) );
+    }
+
+    public void testMalformedIdsAreRejected() throws IOException
+    {
+        assertRejectsHypernyms( "1,x\n" );
+        assertRejectsHypernyms( "1,,0\n" );
+        assertRejectsHypernyms( "1, 0\n" );
+        assertRejectsHypernyms( "-1,0\n" );
+        assertRejectsSynsets( "x,a,gloss\n" );
+        assertRejectsSynsets( ",a,gloss\n" );
+        assertRejectsSynsets( "0,a\n" );
+    }
+
+    private String edges( String text ) throws IOException
+    {
+        try ( FileOutputStream out = new FileOutputStream( this.hypernymsFile ) )
+        {
+            out.write( text.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        List<String> edges = new ArrayList<String>();
+        for ( WordNetParser.EdgeChunk chunk : WordNetParser.parseHypernyms( this.hypernymsFile.getPath() ) )
+        {
+            for ( int i = 0; i < chunk.edgeCount; i++ ) edges.add( chunk.tails[i] + ">" + chunk.heads[i] );
+        }
+        return String.join( " ", edges );
+    }
+
+    private void assertRejectsHypernyms( String text ) throws IOException
+    {
+        try
+        {
+            edges( text );
+            fail( "Accepted hypernyms '" + text.trim() + "'" );
+        }
+        catch ( IllegalArgumentException expected )
+        {
+        }
+    }
+
+    private static void assertRejectsSynsets( String text )
+    {
+        try
+        {
+            WordNetParser.parseSynsets( bytes( text ) );
+            fail( "Accepted synsets '" + text.trim() + "'" );
+        }
+        catch ( IllegalArgumentException expected )
+        {
+        }
+    }
+
+    private static ByteBuffer bytes( String text )
+    {
+        return ByteBuffer.wrap( text.getBytes( StandardCharsets.UTF_8 ) );
+    }
+}
@@ -0,0 +1,270 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * A patched WordNet must answer as one built from scratch out of files
+ * that already hold the patch: the same nouns, glosses, distances and
+ * hypernyms, whichever view the patch was applied to.
+ */
+public class WordNetPatchTest
+    extends TestCase
+{
+    private static final int TRIALS = 20;
+    private static final int QUERIES = 300;
+
+    private List<File> files;
+    private File snapshotFile;
+
+    public WordNetPatchTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( WordNetPatchTest.class );
+    }
+
+    protected void setUp() throws IOException
+    {
+        this.files = new ArrayList<File>();
+        this.snapshotFile = File.createTempFile( "wordnet", ".snap" );
+    }
+
+    protected void tearDown()
+    {
+        for ( File file : this.files ) file.delete();
+        this.snapshotFile.delete();
+    }
+
+    public void testPatchedMatchesRebuilt() throws IOException
+    {
+        Random random = new Random( 37 );
+        for ( int t = 0; t < TRIALS; t++ )
+        {
+            Trial trial = new Trial( random );
+            WordNet rebuilt = trial.build( trial.synsets, false );
+            WordNet base = trial.build( trial.baseSynsets, true );
+            assertSame( rebuilt, base.apply( trial.patch() ), trial, random, true );
+        }
+    }
+
+    public void testLabeledPatchedMatchesRebuilt() throws IOException
+    {
+        Random random = new Random( 41 );
+        for ( int t = 0; t < TRIALS; t++ )
+        {
+            Trial trial = new Trial( random );
+            WordNet rebuilt = trial.build( trial.synsets, false ).withLabels();
+            WordNet base = trial.build( trial.baseSynsets, true ).withLabels();
+            assertSame( rebuilt, base.apply( trial.patch() ), trial, random, true );
+        }
+    }
+
+    /* Locality order numbers the new synsets its own way, so ties may break differently: no SAP check. */
+    public void testLocalityOrderPatchedMatchesRebuilt() throws IOException
+    {
+        Random random = new Random( 43 );
+        for ( int t = 0; t < TRIALS; t++ )
+        {
+            Trial trial = new Trial( random );
+            WordNet rebuilt = trial.build( trial.synsets, false );
+            WordNet base = trial.build( trial.baseSynsets, true ).withLocalityOrder().withLabels();
+            assertSame( rebuilt, base.apply( trial.patch() ), trial, random, false );
+        }
+    }
+
+    /* Patches applied one after another, to a WordNet loaded from a snapshot, add up to one patch. */
+    public void testSnapshotPatchedTwiceMatchesRebuilt() throws IOException
+    {
+        Random random = new Random( 47 );
+        for ( int t = 0; t < TRIALS; t++ )
+        {
+            Trial trial = new Trial( random );
+            WordNet rebuilt = trial.build( trial.synsets, false ).withLabels();
+            trial.build( trial.baseSynsets, true ).withLabels().save( this.snapshotFile.getPath() );
+            WordNet loaded = WordNet.load( this.snapshotFile.getPath() );
+            int middle = trial.baseSynsets + ( trial.synsets - trial.baseSynsets ) / 2;
+            WordNet patched = loaded.apply( trial.patch( trial.baseSynsets, middle ) )
+                                    .apply( trial.patch( middle, trial.synsets ) );
+            assertSame( rebuilt, patched, trial, random, true );
+        }
+    }
+
+    public void testBadPatchesAreRejected() throws IOException
+    {
+        Trial trial = new Trial( new Random( 53 ) );
+        WordNet base = trial.build( trial.baseSynsets, true );
+        int V = trial.baseSynsets;
+        assertRejected( base, new WordNet.Patch().addSynset( V + 1, "gap", "gloss" ).addHypernym( V + 1, 0 ) );
+        assertRejected( base, new WordNet.Patch().addSynset( V, "twice", "gloss" ).addSynset( V, "again", "gloss" )
+                                                 .addHypernym( V, 0 ) );
+        assertRejected( base, new WordNet.Patch().addHypernym( 1, V ) );
+        assertRejected( base, new WordNet.Patch().addSynset( V, "orphan", "gloss" ) );
+        assertRejected( base, new WordNet.Patch().addHypernym( 0, 1 ) );
+        for ( int v = 1; v < V; v++ )
+        {
+            for ( int head : trial.baseHeads.get( v ) )
+            {
+                if ( head != 0 ) assertRejected( base, new WordNet.Patch().addHypernym( head, v ) );
+            }
+        }
+        assertFalse( base.isNoun( "gap" ) );
+        assertEquals( 0, base.hypernyms( "noun0" ).length );
+    }
+
+    private static void assertRejected( WordNet base, WordNet.Patch patch )
+    {
+        try
+        {
+            base.apply( patch );
+            fail( "Applied a bad patch" );
+        }
+        catch ( IllegalArgumentException expected )
+        {
+        }
+    }
+
+    private static void assertSame( WordNet expected, WordNet actual, Trial trial, Random random, boolean sap )
+    {
+        assertEquals( list( expected.nouns() ), list( actual.nouns() ) );
+        for ( int v = 0; v < trial.synsets; v++ ) assertEquals( expected.gloss( v ), actual.gloss( v ) );
+        List<String> nouns = list( expected.nouns() );
+        for ( int q = 0; q < QUERIES; q++ )
+        {
+            String a = nouns.get( random.nextInt( nouns.size() ) );
+            String b = nouns.get( random.nextInt( nouns.size() ) );
+            assertEquals( expected.glosses( a ), actual.glosses( a ) );
+            assertEquals( expected.distance( a, b ), actual.distance( a, b ) );
+            if ( sap ) assertEquals( expected.sap( a, b ), actual.sap( a, b ) );
+            assertEquals( expected.isHypernymOf( a, b ), actual.isHypernymOf( a, b ) );
+            assertTrue( Arrays.equals( expected.hypernyms( a ), actual.hypernyms( a ) ) );
+        }
+    }
+
+    private static List<String> list( Iterable<String> words )
+    {
+        List<String> list = new ArrayList<String>();
+        for ( String word : words ) list.add( word );
+        return list;
+    }
+
+    /*
+     * Random rooted DAG over old and new synsets alike: synset 0 is the root, and every
+     * edge points earlier in a random order, so new synsets may be hypernyms of old ones.
+     */
+    private final class Trial
+    {
+        final int baseSynsets;
+        final int synsets;
+        final int[] order;
+        final int[] position;
+        final String[] words;
+        final List<Set<Integer>> baseHeads = new ArrayList<Set<Integer>>();
+        final List<Set<Integer>> patchHeads = new ArrayList<Set<Integer>>();
+
+        Trial( Random random )
+        {
+            this.baseSynsets = 2 + random.nextInt( 200 );
+            this.synsets = this.baseSynsets + 1 + random.nextInt( 20 );
+            this.order = new int[this.synsets];
+            this.position = new int[this.synsets];
+            for ( int i = 0; i < this.synsets; i++ ) this.order[i] = i;
+            for ( int i = this.synsets - 1; i > 1; i-- )
+            {
+                int j = 1 + random.nextInt( i );
+                int swap = this.order[i];
+                this.order[i] = this.order[j];
+                this.order[j] = swap;
+            }
+            for ( int i = 0; i < this.synsets; i++ ) this.position[this.order[i]] = i;
+
+            /* Each synset gets its own noun, and maybe one it shares with another synset. */
+            this.words = new String[this.synsets];
+            for ( int v = 0; v < this.synsets; v++ )
+            {
+                this.words[v] = "noun" + v;
+                if ( random.nextInt( 3 ) == 0 ) this.words[v] += " shared" + random.nextInt( this.synsets );
+                this.baseHeads.add( new LinkedHashSet<Integer>() );
+                this.patchHeads.add( new LinkedHashSet<Integer>() );
+            }
+            for ( int v = 1; v < this.synsets; v++ )
+            {
+                Set<Integer> heads = ( v < this.baseSynsets ? this.baseHeads : this.patchHeads ).get( v );
+                int limit = Math.min( v, this.baseSynsets );
+                heads.add( earlier( random, v, limit ) );
+                if ( random.nextInt( 4 ) == 0 ) heads.add( earlier( random, v, limit ) );
+            }
+            for ( int e = random.nextInt( 10 ); e > 0; e-- )
+            {
+                int v = 1 + random.nextInt( this.synsets - 1 );
+                int head = earlier( random, v, this.synsets );
+                if ( !this.baseHeads.get( v ).contains( head ) ) this.patchHeads.get( v ).add( head );
+            }
+        }
+
+        /* Random synset before v in the order with an ID below limit; the root always is one. */
+        private int earlier( Random random, int v, int limit )
+        {
+            while ( true )
+            {
+                int head = this.order[random.nextInt( this.position[v] )];
+                if ( head < limit ) return head;
+            }
+        }
+
+        /* WordNet of the first V synsets, with base edges only, or every edge; files are its own, as it maps them. */
+        WordNet build( int V, boolean baseOnly ) throws IOException
+        {
+            File synsetsFile = File.createTempFile( "synsets", ".txt" );
+            File hypernymsFile = File.createTempFile( "hypernyms", ".txt" );
+            WordNetPatchTest.this.files.add( synsetsFile );
+            WordNetPatchTest.this.files.add( hypernymsFile );
+            try ( PrintWriter synsets = new PrintWriter( synsetsFile );
+                  PrintWriter hypernyms = new PrintWriter( hypernymsFile ) )
+            {
+                for ( int v = 0; v < V; v++ )
+                {
+                    synsets.println( v + "," + this.words[v] + ",gloss, for " + v );
+                    hypernyms.print( v );
+                    for ( int head : this.baseHeads.get( v ) ) hypernyms.print( "," + head );
+                    if ( !baseOnly ) for ( int head : this.patchHeads.get( v ) ) hypernyms.print( "," + head );
+                    hypernyms.println();
+                }
+            }
+            return new WordNet( synsetsFile.getPath(), hypernymsFile.getPath() );
+        }
+
+        WordNet.Patch patch()
+        {
+            return patch( this.baseSynsets, this.synsets );
+        }
+
+        /* Synsets from, up to to, and the patch edges whose later end is among them (or before, for the first patch). */
+        WordNet.Patch patch( int from, int to )
+        {
+            WordNet.Patch patch = new WordNet.Patch();
+            for ( int v = from; v < to; v++ ) patch.addSynset( v, this.words[v], "gloss, for " + v );
+            for ( int v = 0; v < to; v++ )
+            {
+                for ( int head : this.patchHeads.get( v ) )
+                {
+                    int last = Math.max( v, head );
+                    if ( last < to && ( last >= from || from == this.baseSynsets ) ) patch.addHypernym( v, head );
+                }
+            }
+            return patch;
+        }
+    }
+}
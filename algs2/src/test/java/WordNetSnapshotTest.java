@@ -0,0 +1,204 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * A snapshot must load as the WordNet that saved it, even when that
+ * WordNet was itself loaded from the file it's saved over.
+ */
+public class WordNetSnapshotTest
+    extends TestCase
+{
+    private static final int SYNSETS = 500;
+    private static final int QUERIES = 500;
+
+    private File synsetsFile;
+    private File hypernymsFile;
+    private File snapshotFile;
+    private List<String> nouns;
+
+    public WordNetSnapshotTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( WordNetSnapshotTest.class );
+    }
+
+    /* Random rooted DAG: synset 0 is the root, every other synset points at earlier ones. */
+    protected void setUp() throws IOException
+    {
+        Random random = new Random( 29 );
+        this.synsetsFile = File.createTempFile( "synsets", ".txt" );
+        this.hypernymsFile = File.createTempFile( "hypernyms", ".txt" );
+        this.snapshotFile = File.createTempFile( "wordnet", ".snap" );
+        this.nouns = new ArrayList<String>();
+        try ( PrintWriter synsets = new PrintWriter( this.synsetsFile );
+              PrintWriter hypernyms = new PrintWriter( this.hypernymsFile ) )
+        {
+            for ( int v = 0; v < SYNSETS; v++ )
+            {
+                String noun = "noun" + v;
+                this.nouns.add( noun );
+                synsets.println( v + "," + noun + " noun" + random.nextInt( SYNSETS ) + ",gloss, for " + v );
+                if ( v == 0 )
+                {
+                    hypernyms.println( 0 );
+                    continue;
+                }
+                hypernyms.print( v + "," + random.nextInt( v ) );
+                if ( random.nextInt( 4 ) == 0 ) hypernyms.print( "," + random.nextInt( v ) );
+                hypernyms.println();
+            }
+        }
+    }
+
+    protected void tearDown()
+    {
+        this.synsetsFile.delete();
+        this.hypernymsFile.delete();
+        this.snapshotFile.delete();
+    }
+
+    public void testSnapshotLoadsAsSaved()
+    {
+        WordNet wordnet = new WordNet( this.synsetsFile.getPath(), this.hypernymsFile.getPath() );
+        wordnet.save( this.snapshotFile.getPath() );
+        assertSame( wordnet, WordNet.load( this.snapshotFile.getPath() ) );
+    }
+
+    public void testLoadedSnapshotSavesOverItself()
+    {
+        WordNet wordnet = new WordNet( this.synsetsFile.getPath(), this.hypernymsFile.getPath() ).withLabels();
+        String path = this.snapshotFile.getPath();
+        wordnet.save( path );
+        WordNet loaded = WordNet.load( path );
+        loaded.save( path );
+        assertSame( wordnet, loaded );
+        assertSame( wordnet, WordNet.load( path ) );
+        assertEquals( 0, leftovers() );
+    }
+
+    /* The temporary file a snapshot is written to mustn't leave it readable by its owner only. */
+    public void testSavedSnapshotHasDefaultPermissions() throws IOException
+    {
+        Path directory = this.snapshotFile.getParentFile().toPath();
+        if ( Files.getFileAttributeView( directory, PosixFileAttributeView.class ) == null ) return;
+        Path plain = directory.resolve( this.snapshotFile.getName() + ".plain" );
+        Path fresh = directory.resolve( this.snapshotFile.getName() + ".fresh" );
+        try
+        {
+            Files.write( plain, new byte[0] );
+            new WordNet( this.synsetsFile.getPath(), this.hypernymsFile.getPath() ).save( fresh.toString() );
+            assertEquals( Files.getPosixFilePermissions( plain ), Files.getPosixFilePermissions( fresh ) );
+        }
+        finally
+        {
+            Files.deleteIfExists( plain );
+            Files.deleteIfExists( fresh );
+        }
+    }
+
+    public void testTruncatedSnapshotIsRejected() throws IOException
+    {
+        new WordNet( this.synsetsFile.getPath(), this.hypernymsFile.getPath() ).withLabels()
+            .save( this.snapshotFile.getPath() );
+        byte[] whole = Files.readAllBytes( this.snapshotFile.toPath() );
+        for ( int length : new int[] { 28, 32, whole.length / 3, whole.length / 2, whole.length - 1 } )
+        {
+            Files.write( this.snapshotFile.toPath(), Arrays.copyOf( whole, length ) );
+            try
+            {
+                WordNet.load( this.snapshotFile.getPath() );
+                fail( "Loaded a snapshot cut off at " + length + " of " + whole.length + " bytes" );
+            }
+            catch ( IllegalArgumentException expected )
+            {
+                assertTrue( expected.getMessage(), expected.getMessage().startsWith( "Truncated WordNet snapshot" ) );
+            }
+        }
+    }
+
+    /* Nouns are looked up in the mapping, comparing UTF-8 in String order, surrogates included. */
+    public void testLoadedSnapshotFindsNounsInPlace() throws IOException
+    {
+        String[] words = { "a", "ab", "b", "caf\u00e9", "\u4e2d", "\uE000", "\uD83D\uDE00", "\uD83D\uDE00x", "zz" };
+        StringBuilder synsets = new StringBuilder( "0,root,gloss\n" );
+        StringBuilder hypernyms = new StringBuilder( "0\n" );
+        for ( int i = 0; i < words.length; i++ )
+        {
+            synsets.append( i + 1 ).append( ',' ).append( words[i] ).append( ",gloss " ).append( i ).append( '\n' );
+            hypernyms.append( i + 1 ).append( ",0\n" );
+        }
+        Files.write( this.synsetsFile.toPath(), synsets.toString().getBytes( StandardCharsets.UTF_8 ) );
+        Files.write( this.hypernymsFile.toPath(), hypernyms.toString().getBytes( StandardCharsets.UTF_8 ) );
+        WordNet wordnet = new WordNet( this.synsetsFile.getPath(), this.hypernymsFile.getPath() );
+        wordnet.save( this.snapshotFile.getPath() );
+        WordNet loaded = WordNet.load( this.snapshotFile.getPath() );
+
+        assertEquals( list( wordnet.nouns() ), list( loaded.nouns() ) );
+        for ( String word : words )
+        {
+            assertTrue( word, loaded.isNoun( word ) );
+            assertEquals( word.equals( "a" ) ? 0 : 2, loaded.distance( word, "a" ) );
+        }
+        for ( String word : new String[] { "", "A", "aa", "ba", "cafe", "caf\u00e9s", "\uD83D", "\uD83D\uDE01", "zzz" } )
+        {
+            assertFalse( word, loaded.isNoun( word ) );
+        }
+
+        WordNet patched = loaded.apply( new WordNet.Patch().addSynset( 10, "aa \u4e2d", "new" ).addHypernym( 10, 1 ) );
+        assertTrue( patched.isNoun( "aa" ) );
+        assertEquals( 1, patched.distance( "aa", "a" ) );
+        assertEquals( 0, patched.distance( "\u4e2d", "aa" ) );
+        for ( String word : words ) assertTrue( word, patched.isNoun( word ) );
+    }
+
+    /* Same nouns, glosses, distances and SAPs. */
+    private void assertSame( WordNet expected, WordNet actual )
+    {
+        assertEquals( list( expected.nouns() ), list( actual.nouns() ) );
+        for ( int v = 0; v < SYNSETS; v++ ) assertEquals( expected.gloss( v ), actual.gloss( v ) );
+        Random random = new Random( 31 );
+        for ( int q = 0; q < QUERIES; q++ )
+        {
+            String a = this.nouns.get( random.nextInt( SYNSETS ) );
+            String b = this.nouns.get( random.nextInt( SYNSETS ) );
+            assertEquals( expected.distance( a, b ), actual.distance( a, b ) );
+            assertEquals( expected.sap( a, b ), actual.sap( a, b ) );
+        }
+    }
+
+    /* Temporary files the writer left beside the snapshot. */
+    private int leftovers()
+    {
+        String prefix = this.snapshotFile.getName() + ".";
+        int count = 0;
+        for ( File file : this.snapshotFile.getParentFile().listFiles() )
+        {
+            if ( file.getName().startsWith( prefix ) && file.getName().endsWith( ".tmp" ) ) count++;
+        }
+        return count;
+    }
+
+    private static List<String> list( Iterable<String> words )
+    {
+        List<String> list = new ArrayList<String>();
+        for ( String word : words ) list.add( word );
+        return list;
+    }
+}